@@ -0,0 +1,90 @@
+package io.storage.jmh;
+
+import io.storage.arrow.BatchWriter;
+import io.storage.arrow.DatasetCatalog;
+import io.storage.arrow.WritePipeline;
+import io.storage.arrow.t.ArrowSchemas;
+import io.storage.arrow.t.Person;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@code rowCount} people per operation, in batches of {@code batchSize}: one at a time with
+ * {@link BatchWriter#writeBatch}, and through the write pipeline with {@code threads} vectorizing workers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BatchWriterBenchmark {
+
+    @Param({"100000", "1000000"})
+    int rowCount;
+
+    @Param({"1000", "20000"})
+    int batchSize;
+
+    private Fixtures.Database database;
+    private DatasetCatalog catalog;
+    private Person[] people;
+    private int datasets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = new Fixtures.Database();
+        catalog = new DatasetCatalog(database.repository);
+        people = Fixtures.people(rowCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public void batchWriter() throws IOException {
+        try (BatchWriter<Person> writer = newBatchWriter()) {
+            for (int from = 0; from < people.length; from += batchSize) {
+                writer.writeBatch(Arrays.copyOfRange(people, from, Math.min(people.length, from + batchSize)));
+            }
+        }
+    }
+
+    @Benchmark
+    public void batchWriterPipelined(final Pipeline pipelineState) throws IOException {
+        try (BatchWriter<Person> writer = newBatchWriter();
+             WritePipeline<Person, BatchWriter.StoredBatch> pipeline = writer.pipelined(pipelineState.threads)) {
+            for (int from = 0; from < people.length; from += batchSize) {
+                pipeline.submit(Arrays.copyOfRange(people, from, Math.min(people.length, from + batchSize)));
+            }
+        }
+    }
+
+    private BatchWriter<Person> newBatchWriter() {
+        return new BatchWriter<>(database.repository,
+                catalog.getOrCreate("batches-" + datasets++, CompressionUtil.CodecType.LZ4_FRAME),
+                ArrowSchemas::vectorizePerson, ArrowSchemas.personSchema());
+    }
+
+    /**
+     * The workers of the pipeline, a state of its own so that {@link #batchWriter()} isn't run once per count.
+     */
+    @State(Scope.Benchmark)
+    public static class Pipeline {
+
+        @Param({"1", "4", "8"})
+        int threads;
+    }
+}
@@ -0,0 +1,59 @@
+package io.storage.jmh;
+
+import io.storage.arrow.DatasetCatalog;
+import io.storage.arrow.t.ArrowSchemas;
+import io.storage.arrow.t.ChunkedWriter;
+import io.storage.arrow.t.Person;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@code rowCount} people per operation as one stream, in chunks of the fixed size of {@link ChunkedWriter}
+ * vectorized by one worker per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChunkedWriterBenchmark {
+
+    @Param({"100000", "1000000"})
+    int rowCount;
+
+    private Fixtures.Database database;
+    private DatasetCatalog catalog;
+    private Person[] people;
+    private int datasets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = new Fixtures.Database();
+        catalog = new DatasetCatalog(database.repository);
+        people = Fixtures.people(rowCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        // a stream is written once, every operation starts a new one
+        new ChunkedWriter<>(database.repository,
+                catalog.getOrCreate("chunked-" + datasets++, CompressionUtil.CodecType.LZ4_FRAME),
+                ArrowSchemas::vectorizePerson)
+                .write(people, ArrowSchemas.personSchema());
+    }
+}
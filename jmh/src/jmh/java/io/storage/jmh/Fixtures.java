@@ -0,0 +1,79 @@
+package io.storage.jmh;
+
+import io.storage.arrow.t.ArrowSchemas;
+import io.storage.arrow.t.Person;
+import io.storage.rocks.RocksDBConfigurations;
+import io.storage.rocks.RocksDBOptions;
+import io.storage.rocks.RocksDBProperties;
+import io.storage.rocks.RocksDBRepository;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.rocksdb.RocksDB;
+import org.rocksdb.Statistics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Databases and data shared by the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * A database in a new temporary directory, with the default profile.
+     */
+    static final class Database implements AutoCloseable {
+
+        final RocksDB db;
+        final RocksDBRepository repository;
+        private final Path directory;
+        private final Statistics statistics;
+        private final RocksDBOptions options;
+
+        Database() throws IOException {
+            this.directory = Files.createTempDirectory("storage-jmh");
+            final RocksDBProperties properties = new RocksDBProperties();
+            properties.setPath(directory.resolve("db").toString());
+            final RocksDBConfigurations configurations = new RocksDBConfigurations();
+            this.statistics = configurations.rocksDBStatistics();
+            this.options = configurations.rocksDBOptions(properties, statistics);
+            this.db = configurations.rocksDB(properties, options);
+            this.repository = new RocksDBRepository(db, properties.getScanReadaheadSize());
+        }
+
+        @Override
+        public void close() throws IOException {
+            db.close();
+            options.close();
+            statistics.close();
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    static Person[] people(int count) {
+        final Person[] people = new Person[count];
+        for (int i = 0; i < count; i++) {
+            people[i] = Person.randomPerson();
+        }
+        return people;
+    }
+
+    /**
+     * Vectorizes the people into {@code root}, which must have the person schema.
+     */
+    static void fill(VectorSchemaRoot root, Person[] people) {
+        for (int i = 0; i < people.length; i++) {
+            ArrowSchemas.vectorizePerson(people[i], i, root);
+        }
+        root.setRowCount(people.length);
+    }
+}
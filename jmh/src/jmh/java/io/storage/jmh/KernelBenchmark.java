@@ -0,0 +1,116 @@
+package io.storage.jmh;
+
+import io.storage.arrow.Allocators;
+import io.storage.arrow.LowCardinalityEncoder;
+import io.storage.arrow.query.Batch;
+import io.storage.arrow.query.Condition;
+import io.storage.arrow.query.GroupBy;
+import io.storage.arrow.query.Selection;
+import io.storage.arrow.t.ArrowSchemas;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The filter and aggregate kernels over one in-memory batch of {@code batchSize} people, with plain or
+ * dictionary-encoded string columns. The selection is reused by every operation, like the readers do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KernelBenchmark {
+
+    private static final Condition AGE = Condition.range("age", 18, 35);
+    private static final Condition LAST_NAME = Condition.prefix("lastName", "P");
+    private static final Condition STREET = Condition.suffix("address.street", "way");
+    private static final Condition CITY = Condition.in("address.city", "Paris", "London");
+    private static final Condition PROCESS_DATA = Condition.and(AGE, LAST_NAME, STREET);
+
+    @Param({"1024", "20000"})
+    int batchSize;
+
+    @Param({"false", "true"})
+    boolean encoded;
+
+    private BufferAllocator allocator;
+    private VectorSchemaRoot raw;
+    private LowCardinalityEncoder encoder;
+    private LowCardinalityEncoder.EncodedBatch encodedBatch;
+    private Batch batch;
+    private final Selection selection = new Selection();
+    private Selection all;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        allocator = Allocators.child(getClass().getSimpleName());
+        raw = VectorSchemaRoot.create(ArrowSchemas.personSchema(), allocator);
+        Fixtures.fill(raw, Fixtures.people(batchSize));
+        if (encoded) {
+            encoder = new LowCardinalityEncoder(allocator, raw);
+            encodedBatch = encoder.encode(raw);
+            batch = new Batch(encodedBatch.root(), encoder.getDictionaries());
+        } else {
+            batch = new Batch(raw, null);
+        }
+        all = Selection.all(batchSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (encoded) {
+            encodedBatch.close();
+            encoder.close();
+        }
+        raw.close();
+        allocator.close();
+    }
+
+    @Benchmark
+    public int ageRange() {
+        AGE.select(batch, selection);
+        return selection.cardinality();
+    }
+
+    @Benchmark
+    public int lastNamePrefix() {
+        LAST_NAME.select(batch, selection);
+        return selection.cardinality();
+    }
+
+    @Benchmark
+    public int streetSuffix() {
+        STREET.select(batch, selection);
+        return selection.cardinality();
+    }
+
+    @Benchmark
+    public int cityIn() {
+        CITY.select(batch, selection);
+        return selection.cardinality();
+    }
+
+    @Benchmark
+    public int processDataFilter() {
+        PROCESS_DATA.select(batch, selection);
+        return selection.cardinality();
+    }
+
+    @Benchmark
+    public GroupBy groupByCity() {
+        final GroupBy perCity = new GroupBy(1);
+        perCity.add(batch.utf8("address.city"), all, (BaseIntVector) batch.vector("age"));
+        return perCity;
+    }
+}
@@ -0,0 +1,82 @@
+package io.storage.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point reads and writes of random keys among {@code keyCount} preloaded ones, from one and from eight threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RocksDBRepositoryBenchmark {
+
+    @Param({"10000", "1000000"})
+    int keyCount;
+
+    @Param({"100", "4096"})
+    int valueSize;
+
+    private Fixtures.Database database;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = new Fixtures.Database();
+        value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+        for (int i = 0; i < keyCount; i++) {
+            database.repository.save(key(i), value);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<byte[]> get() {
+        return database.repository.find(randomKey());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Optional<byte[]> getContended() {
+        return database.repository.find(randomKey());
+    }
+
+    @Benchmark
+    public boolean put() {
+        return database.repository.save(randomKey(), value);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean putContended() {
+        return database.repository.save(randomKey(), value);
+    }
+
+    private byte[] randomKey() {
+        return key(ThreadLocalRandom.current().nextInt(keyCount));
+    }
+
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(i).array();
+    }
+}
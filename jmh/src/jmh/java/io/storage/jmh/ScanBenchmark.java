@@ -0,0 +1,98 @@
+package io.storage.jmh;
+
+import io.storage.arrow.BatchReader;
+import io.storage.arrow.BatchWriter;
+import io.storage.arrow.Dataset;
+import io.storage.arrow.DatasetCatalog;
+import io.storage.arrow.WritePipeline;
+import io.storage.arrow.query.Batch;
+import io.storage.arrow.query.Condition;
+import io.storage.arrow.query.GroupBy;
+import io.storage.arrow.query.Selection;
+import io.storage.arrow.t.ArrowSchemas;
+import io.storage.arrow.t.Person;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parallel scans with {@link BatchReader} over {@code rowCount} people stored in batches of {@code batchSize}, with
+ * {@code threads} workers: counting the rows, and filtering and aggregating the age per city into per-worker
+ * partials.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScanBenchmark {
+
+    private static final Condition FILTER = Condition.suffix("address.street", "way");
+
+    @Param({"100000", "1000000"})
+    int rowCount;
+
+    @Param({"1000", "20000"})
+    int batchSize;
+
+    @Param({"1", "4", "8"})
+    int threads;
+
+    private Fixtures.Database database;
+    private Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = new Fixtures.Database();
+        dataset = new DatasetCatalog(database.repository).getOrCreate("people", CompressionUtil.CodecType.LZ4_FRAME);
+        final Person[] people = Fixtures.people(rowCount);
+        try (BatchWriter<Person> writer = new BatchWriter<>(
+                database.repository, dataset, ArrowSchemas::vectorizePerson, ArrowSchemas.personSchema());
+             WritePipeline<Person, BatchWriter.StoredBatch> pipeline =
+                     writer.pipelined(Runtime.getRuntime().availableProcessors())) {
+            for (int from = 0; from < people.length; from += batchSize) {
+                pipeline.submit(Arrays.copyOfRange(people, from, Math.min(people.length, from + batchSize)));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public long countRows() {
+        final LongAdder rows = new LongAdder();
+        new BatchReader(database.repository, dataset, (batch, dictionaries) -> rows.add(batch.getRowCount()))
+                .readBatchesInParallel(threads);
+        return rows.sum();
+    }
+
+    @Benchmark
+    public GroupBy filterAndAggregate() {
+        final ThreadLocal<Selection> selections = ThreadLocal.withInitial(Selection::new);
+        return new BatchReader(database.repository, dataset, FILTER::mayMatch).aggregateInParallel(
+                threads,
+                () -> new GroupBy(1),
+                (partial, root, dictionaries) -> {
+                    final Batch batch = new Batch(root, dictionaries);
+                    final Selection selection = selections.get();
+                    FILTER.select(batch, selection);
+                    partial.add(batch.utf8("address.city"), selection, (BaseIntVector) batch.vector("age"));
+                },
+                GroupBy::merge);
+    }
+}
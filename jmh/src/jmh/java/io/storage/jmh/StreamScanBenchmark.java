@@ -0,0 +1,92 @@
+package io.storage.jmh;
+
+import io.storage.arrow.Allocators;
+import io.storage.arrow.Dataset;
+import io.storage.arrow.DatasetCatalog;
+import io.storage.arrow.RocksDbArrowReader;
+import io.storage.arrow.query.Batch;
+import io.storage.arrow.query.Condition;
+import io.storage.arrow.query.GroupBy;
+import io.storage.arrow.query.Selection;
+import io.storage.arrow.t.ArrowSchemas;
+import io.storage.arrow.t.ChunkedWriter;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential scans with {@link RocksDbArrowReader} of a stream of {@code rowCount} people written by
+ * {@link ChunkedWriter}: counting the rows, and the filter and aggregation of {@code ProcessDataApplication} with
+ * the batches the statistics rule out skipped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StreamScanBenchmark {
+
+    private static final Condition FILTER = Condition.and(
+            Condition.range("age", 18, 35),
+            Condition.prefix("lastName", "P"),
+            Condition.suffix("address.street", "way"));
+
+    @Param({"100000", "1000000"})
+    int rowCount;
+
+    private Fixtures.Database database;
+    private Dataset dataset;
+    private BufferAllocator allocator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = new Fixtures.Database();
+        dataset = new DatasetCatalog(database.repository).getOrCreate("people", CompressionUtil.CodecType.LZ4_FRAME);
+        new ChunkedWriter<>(database.repository, dataset, ArrowSchemas::vectorizePerson)
+                .write(Fixtures.people(rowCount), ArrowSchemas.personSchema());
+        allocator = Allocators.child(getClass().getSimpleName());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        allocator.close();
+        database.close();
+    }
+
+    @Benchmark
+    public long countRows() throws IOException {
+        long rows = 0;
+        try (RocksDbArrowReader reader = new RocksDbArrowReader(database.repository, dataset, allocator)) {
+            while (reader.loadNextBatch()) {
+                rows += reader.getVectorSchemaRoot().getRowCount();
+            }
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public GroupBy filterAndAggregate() throws IOException {
+        final GroupBy perCity = new GroupBy(1);
+        try (RocksDbArrowReader reader = new RocksDbArrowReader(
+                database.repository, dataset, allocator, FILTER::mayMatch)) {
+            final Batch batch = new Batch(reader.getVectorSchemaRoot(), reader);
+            final Selection selection = new Selection();
+            while (reader.loadNextBatch()) {
+                FILTER.select(batch, selection);
+                perCity.add(batch.utf8("address.city"), selection, (BaseIntVector) batch.vector("age"));
+            }
+        }
+        return perCity;
+    }
+}
@@ -0,0 +1,176 @@
+package io.storage;
+
+import org.apache.arrow.memory.util.ByteFunctionHelpers;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Where clause of a {@link Query}. It is compiled against each segment into a {@link RowFilter} reading the vectors
+ * in place, a segment without a field of a conjunction compiles to {@link RowFilter#NONE} and isn't scanned.
+ * Null values match no comparison.
+ */
+interface Condition {
+
+    RowFilter compile(VectorSchemaRoot root);
+
+    @FunctionalInterface
+    interface RowFilter {
+        RowFilter ALL = row -> true;
+        RowFilter NONE = row -> false;
+
+        boolean test(int row);
+    }
+
+    enum Operator {
+        EQ, NE, LT, LE, GT, GE, PREFIX;
+
+        boolean matches(int comparison) {
+            return switch (this) {
+                case EQ -> comparison == 0;
+                case NE -> comparison != 0;
+                case LT -> comparison < 0;
+                case LE -> comparison <= 0;
+                case GT -> comparison > 0;
+                case GE -> comparison >= 0;
+                case PREFIX -> throw new IllegalStateException("Prefix is not a comparison");
+            };
+        }
+    }
+
+    record And(List<Condition> conditions) implements Condition {
+        @Override
+        public RowFilter compile(VectorSchemaRoot root) {
+            final List<RowFilter> filters = new ArrayList<>(conditions.size());
+            for (Condition condition : conditions) {
+                final RowFilter filter = condition.compile(root);
+                if (filter == RowFilter.NONE) {
+                    return RowFilter.NONE;
+                }
+                if (filter != RowFilter.ALL) {
+                    filters.add(filter);
+                }
+            }
+            return switch (filters.size()) {
+                case 0 -> RowFilter.ALL;
+                case 1 -> filters.get(0);
+                default -> row -> {
+                    for (RowFilter filter : filters) {
+                        if (!filter.test(row)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
+            };
+        }
+    }
+
+    record Or(List<Condition> conditions) implements Condition {
+        @Override
+        public RowFilter compile(VectorSchemaRoot root) {
+            final List<RowFilter> filters = new ArrayList<>(conditions.size());
+            for (Condition condition : conditions) {
+                final RowFilter filter = condition.compile(root);
+                if (filter == RowFilter.ALL) {
+                    return RowFilter.ALL;
+                }
+                if (filter != RowFilter.NONE) {
+                    filters.add(filter);
+                }
+            }
+            return switch (filters.size()) {
+                case 0 -> RowFilter.NONE;
+                case 1 -> filters.get(0);
+                default -> row -> {
+                    for (RowFilter filter : filters) {
+                        if (filter.test(row)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+            };
+        }
+    }
+
+    /**
+     * @param value a {@link String}, a {@link BigDecimal} or a {@link Boolean}
+     */
+    record Comparison(String field, Operator operator, Object value) implements Condition {
+
+        @Override
+        public RowFilter compile(VectorSchemaRoot root) {
+            final FieldVector vector = root.getVector(field);
+            if (vector == null) {
+                return RowFilter.NONE;
+            }
+            if (vector instanceof VarCharVector strings && value instanceof String string) {
+                return strings(strings, string.getBytes(StandardCharsets.UTF_8));
+            }
+            if (vector instanceof IntVector ints && value instanceof BigDecimal number) {
+                return numbers(ints, ints::get, number);
+            }
+            if (vector instanceof DecimalVector decimals && value instanceof BigDecimal number) {
+                if (decimals.getPrecision() > 18) {
+                    throw new UnsupportedOperationException(field + " has more digits than a long");
+                }
+                // the low half of the little-endian 128-bit value holds the whole unscaled value
+                return numbers(decimals,
+                        row -> decimals.getDataBuffer().getLong((long) row * DecimalVector.TYPE_WIDTH),
+                        number.movePointRight(decimals.getScale()));
+            }
+            if (vector instanceof BitVector booleans && value instanceof Boolean bool
+                    && (operator == Operator.EQ || operator == Operator.NE)) {
+                final int wanted = bool ? 1 : 0;
+                return operator == Operator.EQ
+                        ? row -> !booleans.isNull(row) && booleans.get(row) == wanted
+                        : row -> !booleans.isNull(row) && booleans.get(row) != wanted;
+            }
+            throw new IllegalArgumentException("Can't compare " + field + " of type "
+                    + vector.getField().getType() + " with " + operator + " " + value);
+        }
+
+        private RowFilter strings(VarCharVector strings, byte[] literal) {
+            if (operator == Operator.PREFIX) {
+                return row -> {
+                    if (strings.isNull(row) || strings.getValueLength(row) < literal.length) {
+                        return false;
+                    }
+                    final int start = strings.getStartOffset(row);
+                    return ByteFunctionHelpers.compare(strings.getDataBuffer(), start, start + literal.length,
+                            literal, 0, literal.length) == 0;
+                };
+            }
+            return row -> {
+                if (strings.isNull(row)) {
+                    return false;
+                }
+                final int start = strings.getStartOffset(row);
+                return operator.matches(ByteFunctionHelpers.compare(strings.getDataBuffer(), start,
+                        start + strings.getValueLength(row), literal, 0, literal.length));
+            };
+        }
+
+        /**
+         * Integral values against a literal of the same scale, as doubles: they are exact for the values and keep a
+         * fractional literal apart from every value.
+         */
+        private RowFilter numbers(FieldVector vector, IntToDoubleFunction values, BigDecimal literal) {
+            if (operator == Operator.PREFIX) {
+                throw new IllegalArgumentException("Prefix of " + field + " which is a number");
+            }
+            final double bound = literal.doubleValue();
+            return row -> !vector.isNull(row) && operator.matches(Double.compare(values.applyAsDouble(row), bound));
+        }
+    }
+}
@@ -1,183 +1,185 @@
 package io.storage;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.BitVector;
 import org.apache.arrow.vector.DecimalVector;
 import org.apache.arrow.vector.FieldVector;
 import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.ValueVector;
 import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
-import org.apache.arrow.vector.dictionary.DictionaryProvider;
-import org.apache.arrow.vector.ipc.ArrowStreamReader;
-import org.apache.arrow.vector.ipc.ArrowStreamWriter;
 import org.apache.arrow.vector.types.pojo.ArrowType;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.types.pojo.FieldType;
-import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 
-import javax.annotation.Nullable;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.math.RoundingMode;
-import java.nio.channels.Channels;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
-class InsertProcessor {
+/**
+ * Reads a JSON array of flat objects token by token and writes the values straight into vectors, every
+ * {@code batchSize} rows are stored as a segment of the collection. Memory stays bounded by one batch whatever the
+ * size of the input. An insert is all or nothing: the segments stored by a failed one are removed again.
+ */
+class InsertProcessor implements AutoCloseable {
 
-    private final RocksDB rocksDB;
+    private static final int DEFAULT_BATCH_SIZE = 65_536;
+
+    private static final ArrowType BOOL = new ArrowType.Bool();
+    private static final ArrowType INT = new ArrowType.Int(32, true);
+    private static final ArrowType UTF8 = new ArrowType.Utf8();
+    private static final ArrowType DECIMAL = new ArrowType.Decimal(15, 3, 128);
+
+    // thread-safe, parsers share its symbol tables
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final SegmentStore store;
     private final BufferAllocator allocator;
-    private final BufferAllocator allocatorRead;
+    private final int batchSize;
 
-    public InsertProcessor(final RocksDB rocksDB) {
-        this.rocksDB = rocksDB;
+    public InsertProcessor(final SegmentStore store) {
+        this(store, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize rows of the stored segments, the last one may have fewer
+     */
+    public InsertProcessor(final SegmentStore store, final int batchSize) {
+        this.store = store;
         this.allocator = new RootAllocator(Long.MAX_VALUE);
-        this.allocatorRead = new RootAllocator(Long.MAX_VALUE);
+        this.batchSize = batchSize;
     }
 
     public void insertData(final String collection, final String jsonDate) throws IOException, RocksDBException {
-        byte[] bytes = rocksDB.get(collection.getBytes());
-        byte[] arrowData = convertToArrowFormat(bytes, jsonDate);
-        rocksDB.put(collection.getBytes(), arrowData);
+        insertData(collection, new StringReader(jsonDate));
     }
 
-    private byte[] convertToArrowFormat(byte[] bytes, final String data) throws IOException {
-        ;
-        if (bytes == null) {
-            final VectorSchemaRoot root = convertToVectorSchemaRoot(null, data);
-            return toByte(root);
-        } else {
-            try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-                 var reader = new ArrowStreamReader(bais, allocatorRead)) {
-                var dbData = reader.getVectorSchemaRoot();
-                reader.loadNextBatch();
-                final VectorSchemaRoot root = convertToVectorSchemaRoot(dbData, data);
-                return toByte(root);
-            }
+    /**
+     * Stores the rows as new segments of the collection, the rows already stored are not read.
+     */
+    public void insertData(final String collection, final Reader json) throws IOException, RocksDBException {
+        try (JsonParser parser = JSON.createParser(json)) {
+            insert(collection, parser);
         }
     }
 
-    private static byte[] toByte(VectorSchemaRoot root) throws IOException {
-        final DictionaryProvider.MapDictionaryProvider dictProvider =
-                new DictionaryProvider.MapDictionaryProvider();
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-        final ArrowStreamWriter arrowFileWriter = new ArrowStreamWriter(root, dictProvider, Channels.newChannel(baos));
+    /**
+     * Same as {@link #insertData(String, Reader)}, the encoding is detected from the stream.
+     */
+    public void insertData(final String collection, final InputStream json) throws IOException, RocksDBException {
+        try (JsonParser parser = JSON.createParser(json)) {
+            insert(collection, parser);
+        }
+    }
 
-        arrowFileWriter.start();
-        arrowFileWriter.writeBatch();
-        arrowFileWriter.end();
+    private void insert(final String collection, final JsonParser parser) throws IOException, RocksDBException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Expected an array of objects at " + parser.getCurrentLocation());
+        }
+        try (SegmentStore.Append append = store.begin(collection);
+             Batch batch = new Batch(append)) {
+            JsonToken token = parser.nextToken();
+            for (; token == JsonToken.START_OBJECT; token = parser.nextToken()) {
+                batch.addRow(parser);
+                if (batch.rowCount == batchSize) {
+                    batch.flush();
+                }
+            }
+            if (token != JsonToken.END_ARRAY) {
+                throw new IOException("Expected an object at " + parser.getCurrentLocation());
+            }
+            batch.flush();
+            append.commit();
+        }
+    }
 
-        return baos.toByteArray();
+    @Override
+    public void close() {
+        allocator.close();
     }
 
-    private VectorSchemaRoot convertToVectorSchemaRoot(
-            @Nullable final VectorSchemaRoot root, final String data) throws JsonProcessingException {
-        int index = Optional.ofNullable(root)
-                .map(VectorSchemaRoot::getRowCount)
-                .orElse(0);
-
-        final var vectors = new HashMap<String, FieldVector>();
-
-        final JsonNode jsonArray = new ObjectMapper().readTree(data);
-        if (jsonArray.isArray()) {
-            for (var jsonNode : jsonArray) {
-                for (Iterator<Map.Entry<String, JsonNode>> it = jsonNode.fields(); it.hasNext(); ) {
-                    final var jnEntry = it.next();
-                    final String name = jnEntry.getKey();
-                    final JsonNode jn = jnEntry.getValue();
-
-                    final Optional<FieldVector> fvOpt = Optional.ofNullable(root)
-                            .map(r -> r.getVector(name))
-                            .or(() -> Optional.ofNullable(vectors.get(name)));
-                    if (jn.isBoolean()) {
-                        BitVector bitVector = fvOpt
-                                .map(vv -> (BitVector) vv)
-                                .orElseGet(() -> {
-                                    final var newVector = new BitVector(
-                                            new Field(name, FieldType.nullable(
-                                                    new ArrowType.Bool()), null),
-                                            allocator);
-                                    vectors.put(name, newVector);
-                                    return newVector;
-                                });
-
-                        bitVector.setSafe(index, jn.asBoolean() ? 1 : 0);
-                        bitVector.setValueCount(index + 1);
-
-                    } else if (jn.isInt()) {
-                        IntVector intVector = fvOpt
-                                .map(vv -> (IntVector) vv)
-                                .orElseGet(() -> {
-                                    final var newVector = new IntVector(
-                                            new Field(name, FieldType.nullable(
-                                                    new ArrowType.Int(32, true)), null),
-                                            allocator);
-                                    vectors.put(name, newVector);
-                                    return newVector;
-                                });
-
-                        intVector.setSafe(index, Integer.valueOf(jn.asInt()).byteValue());
-                        intVector.setValueCount(index + 1);
-
-                    } else if (jn.isTextual()) {
-                        VarCharVector stringVector = fvOpt
-                                .map(vv -> (VarCharVector) vv)
-                                .orElseGet(() ->
-                                {
-                                    final var newVector = new VarCharVector(
-                                            new Field(name, FieldType.nullable(
-                                                    new ArrowType.Utf8()), null),
-                                            allocator);
-                                    vectors.put(name, newVector);
-                                    return newVector;
-                                });
-                        stringVector.setSafe(index, jn.asText().getBytes());
-                        stringVector.setValueCount(index + 1);
-
-                    } else if (jn.isFloatingPointNumber()) {
-                        DecimalVector decimalVector = fvOpt
-                                .map(vv -> (DecimalVector) vv)
-                                .orElseGet(() ->
-                                {
-                                    final var newVector = new DecimalVector(
-                                            new Field(name, FieldType.nullable(
-                                                    new ArrowType.Decimal(15, 3, 128)), null),
-                                            allocator);
-                                    vectors.put(name, newVector);
-                                    return newVector;
-                                });
-                        decimalVector.setSafe(index, jn.decimalValue().setScale(3, RoundingMode.HALF_UP));
-                        decimalVector.setValueCount(index + 1);
-
-                    } else {
-                        throw new UnsupportedOperationException();
+    /**
+     * Vectors of the fields met so far, reused from one segment to the next.
+     */
+    private final class Batch implements AutoCloseable {
+        private final SegmentStore.Append append;
+        // resolved once per field name, in the order of first appearance
+        private final Map<String, FieldVector> columns = new LinkedHashMap<>();
+        private int rowCount = 0;
+
+        private Batch(SegmentStore.Append append) {
+            this.append = append;
+        }
+
+        /**
+         * Writes the fields of the object the parser is at, up to its end. Nulls and absent fields are left null.
+         */
+        void addRow(JsonParser parser) throws IOException {
+            for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                switch (value) {
+                    case VALUE_TRUE, VALUE_FALSE ->
+                            ((BitVector) column(name, BOOL)).setSafe(rowCount, value == JsonToken.VALUE_TRUE ? 1 : 0);
+                    case VALUE_NUMBER_INT -> {
+                        if (parser.getNumberType() != JsonParser.NumberType.INT) {
+                            throw new UnsupportedOperationException(name + " is out of the int range");
+                        }
+                        ((IntVector) column(name, INT)).setSafe(rowCount, parser.getIntValue());
                     }
+                    case VALUE_NUMBER_FLOAT -> ((DecimalVector) column(name, DECIMAL))
+                            .setSafe(rowCount, parser.getDecimalValue().setScale(3, RoundingMode.HALF_UP));
+                    case VALUE_STRING -> ((VarCharVector) column(name, UTF8))
+                            .setSafe(rowCount, parser.getText().getBytes(StandardCharsets.UTF_8));
+                    case VALUE_NULL -> {
+                    }
+                    default -> throw new UnsupportedOperationException(name + " is " + value);
                 }
-                index++;
             }
+            rowCount++;
         }
 
-        final VectorSchemaRoot result = Optional.ofNullable(root)
-                .map(r -> {
-                    VectorSchemaRoot newVsr = r;
-                    for (FieldVector fv : vectors.values()) {
-                        newVsr = newVsr.addVector(0, fv);
-                    }
-                    return newVsr;
-                })
-                .orElseGet(() -> new VectorSchemaRoot(vectors.values()));
+        private FieldVector column(String name, ArrowType type) {
+            FieldVector vector = columns.get(name);
+            if (vector == null) {
+                vector = new Field(name, FieldType.nullable(type), null).createVector(allocator);
+                columns.put(name, vector);
+            } else if (!vector.getField().getType().equals(type)) {
+                throw new UnsupportedOperationException(name + " is " + vector.getField().getType() + " and " + type);
+            }
+            return vector;
+        }
 
-        result.setRowCount(index);
-        return result;
-    }
+        /**
+         * Stores the rows added since the previous flush as a segment.
+         */
+        void flush() throws IOException, RocksDBException {
+            if (rowCount == 0) {
+                return;
+            }
+            final List<FieldVector> vectors = List.copyOf(columns.values());
+            // the root only borrows the vectors, the batch closes them
+            final VectorSchemaRoot root = new VectorSchemaRoot(vectors);
+            root.setRowCount(rowCount);
+            append.add(root);
+            vectors.forEach(ValueVector::reset);
+            rowCount = 0;
+        }
 
+        @Override
+        public void close() {
+            columns.values().forEach(ValueVector::close);
+        }
+    }
 }
@@ -0,0 +1,272 @@
+package io.storage;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A parsed {@code _find} query:
+ * <pre>
+ *     query      := collection ['select' ('*' | field (',' field)*)] ['where' or] ['limit' int]
+ *                 | collection field value
+ *     or         := and ('or' and)*
+ *     and        := primary ('and' primary)*
+ *     primary    := '(' or ')' | field op literal | field 'prefix' string | field 'between' literal 'and' literal
+ *     op         := '=' | '!=' | '<' | '<=' | '>' | '>='
+ *     literal    := 'string' | number | 'true' | 'false'
+ * </pre>
+ * Keywords are case-insensitive, fields with other characters than letters, digits, '_', '.' and '-' are double
+ * quoted. The second form is the equality of a string field, the value being the rest of the query. A field named
+ * select, where or limit is only read that way when the query doesn't parse as the first form and has none of its
+ * symbols, so that the errors of the first form are still reported.
+ *
+ * @param fields fields of the printed rows, all of them if empty
+ * @param where  null when every row matches
+ */
+record Query(String collection, List<String> fields, @Nullable Condition where, int limit) {
+
+    static Query parse(String text) {
+        return new Parser(text).query();
+    }
+
+    /**
+     * @return string equalities every matching row satisfies, an index of any of them gives the candidate rows
+     */
+    List<Condition.Comparison> lookups() {
+        final List<Condition> conjuncts = where instanceof Condition.And conjunction ? conjunction.conditions()
+                : where != null ? List.of(where) : List.of();
+        final List<Condition.Comparison> lookups = new ArrayList<>();
+        for (Condition conjunct : conjuncts) {
+            if (conjunct instanceof Condition.Comparison comparison
+                    && comparison.operator() == Condition.Operator.EQ
+                    && comparison.value() instanceof String) {
+                lookups.add(comparison);
+            }
+        }
+        return lookups;
+    }
+
+    private static final class Parser {
+        private static final String CLAUSE_SYMBOLS = "=<>!(),*'\"";
+
+        private final String text;
+        private int position = 0;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        Query query() {
+            final String collection = identifier();
+            skipSpaces();
+            if (!atEnd() && !peekKeyword("select") && !peekKeyword("where") && !peekKeyword("limit")) {
+                return equality(collection);
+            }
+            final int start = position;
+            try {
+                return clauses(collection);
+            } catch (IllegalArgumentException e) {
+                // the field of an equality named like a keyword
+                final String rest = text.substring(start);
+                if (rest.indexOf(' ') < 0 || rest.chars().anyMatch(c -> CLAUSE_SYMBOLS.indexOf(c) >= 0)) {
+                    throw e;
+                }
+                position = start;
+                return equality(collection);
+            }
+        }
+
+        private Query equality(String collection) {
+            final String[] split = text.substring(position).split(" ", 2);
+            if (split.length < 2) {
+                throw error("a value");
+            }
+            return new Query(collection, List.of(),
+                    new Condition.Comparison(split[0], Condition.Operator.EQ, split[1]), Integer.MAX_VALUE);
+        }
+
+        private Query clauses(String collection) {
+            final List<String> fields = new ArrayList<>();
+            if (keyword("select") && !symbol("*")) {
+                do {
+                    fields.add(identifier());
+                } while (symbol(","));
+            }
+            final Condition where = keyword("where") ? or() : null;
+            int limit = Integer.MAX_VALUE;
+            if (keyword("limit")) {
+                final Object value = literal();
+                if (!(value instanceof BigDecimal number) || number.scale() > 0 || number.signum() < 0) {
+                    throw error("a limit");
+                }
+                limit = number.min(BigDecimal.valueOf(Integer.MAX_VALUE)).intValue();
+            }
+            skipSpaces();
+            if (!atEnd()) {
+                throw error("the end of the query");
+            }
+            return new Query(collection, List.copyOf(fields), where, limit);
+        }
+
+        private Condition or() {
+            final List<Condition> conditions = new ArrayList<>();
+            do {
+                conditions.add(and());
+            } while (keyword("or"));
+            return conditions.size() == 1 ? conditions.get(0) : new Condition.Or(conditions);
+        }
+
+        private Condition and() {
+            final List<Condition> conditions = new ArrayList<>();
+            do {
+                conditions.add(primary());
+            } while (keyword("and"));
+            return conditions.size() == 1 ? conditions.get(0) : new Condition.And(conditions);
+        }
+
+        private Condition primary() {
+            if (symbol("(")) {
+                final Condition condition = or();
+                if (!symbol(")")) {
+                    throw error("')'");
+                }
+                return condition;
+            }
+            final String field = identifier();
+            if (keyword("prefix")) {
+                return new Condition.Comparison(field, Condition.Operator.PREFIX, literal());
+            }
+            if (keyword("between")) {
+                final Object low = literal();
+                if (!keyword("and")) {
+                    throw error("'and'");
+                }
+                return new Condition.And(List.of(
+                        new Condition.Comparison(field, Condition.Operator.GE, low),
+                        new Condition.Comparison(field, Condition.Operator.LE, literal())));
+            }
+            return new Condition.Comparison(field, operator(), literal());
+        }
+
+        private Condition.Operator operator() {
+            if (symbol("!=")) {
+                return Condition.Operator.NE;
+            } else if (symbol("<=")) {
+                return Condition.Operator.LE;
+            } else if (symbol(">=")) {
+                return Condition.Operator.GE;
+            } else if (symbol("=")) {
+                return Condition.Operator.EQ;
+            } else if (symbol("<")) {
+                return Condition.Operator.LT;
+            } else if (symbol(">")) {
+                return Condition.Operator.GT;
+            }
+            throw error("a comparison");
+        }
+
+        private Object literal() {
+            skipSpaces();
+            if (symbol("'")) {
+                final StringBuilder value = new StringBuilder();
+                while (true) {
+                    if (atEnd()) {
+                        throw error("a closing quote");
+                    }
+                    final char c = text.charAt(position++);
+                    if (c == '\'') {
+                        // a doubled quote is a quote
+                        if (atEnd() || text.charAt(position) != '\'') {
+                            return value.toString();
+                        }
+                        position++;
+                    }
+                    value.append(c);
+                }
+            }
+            if (keyword("true")) {
+                return Boolean.TRUE;
+            }
+            if (keyword("false")) {
+                return Boolean.FALSE;
+            }
+            final int start = position;
+            while (!atEnd() && "+-.0123456789".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            try {
+                return new BigDecimal(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                position = start;
+                throw error("a literal");
+            }
+        }
+
+        private String identifier() {
+            skipSpaces();
+            if (symbol("\"")) {
+                final int end = text.indexOf('"', position);
+                if (end < 0) {
+                    throw error("a closing double quote");
+                }
+                final String identifier = text.substring(position, end);
+                position = end + 1;
+                return identifier;
+            }
+            final int start = position;
+            while (!atEnd() && isIdentifierPart(text.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw error("a name");
+            }
+            return text.substring(start, position);
+        }
+
+        private boolean keyword(String keyword) {
+            skipSpaces();
+            if (!peekKeyword(keyword)) {
+                return false;
+            }
+            position += keyword.length();
+            return true;
+        }
+
+        private boolean peekKeyword(String keyword) {
+            final int end = position + keyword.length();
+            return text.regionMatches(true, position, keyword, 0, keyword.length())
+                    && (end == text.length() || !isIdentifierPart(text.charAt(end)));
+        }
+
+        private boolean symbol(String symbol) {
+            skipSpaces();
+            if (!text.startsWith(symbol, position)) {
+                return false;
+            }
+            position += symbol.length();
+            return true;
+        }
+
+        private void skipSpaces() {
+            while (!atEnd() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean atEnd() {
+            return position >= text.length();
+        }
+
+        private static boolean isIdentifierPart(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-';
+        }
+
+        private IllegalArgumentException error(String expected) {
+            final String found = atEnd() ? "the end" : "'" + text.substring(position) + "'";
+            return new IllegalArgumentException(String.format(Locale.ROOT,
+                    "Expected %s at %d of '%s', found %s", expected, position, text, found));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Results of queries by collection, weighted by their size and evicted by W-TinyLFU. Every append to a collection
+ * starts a new generation of it and drops its results; a result is cached under the generation read before it was
+ * computed, so one computed while rows were appended is never returned afterwards.
+ */
+class QueryCache {
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 64L << 20;
+
+    private final Cache<Key, String> results;
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    QueryCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize bytes of the cached results
+     */
+    QueryCache(final long maximumSize) {
+        this.results = Caffeine.newBuilder()
+                .maximumWeight(maximumSize)
+                .weigher((Key key, String result) -> 2 * (key.query().length() + result.length()))
+                .build();
+    }
+
+    /**
+     * @return the cached result of the query of the collection, or the one computed by {@code query}
+     */
+    String get(final String collection, final String query, final Supplier<String> compute) {
+        final long generation = generation(collection).get();
+        return results.get(new Key(collection, generation, query), key -> compute.get());
+    }
+
+    /**
+     * Drops the results of the collection, called once rows are appended to it.
+     */
+    void invalidate(final String collection) {
+        generation(collection).incrementAndGet();
+        results.asMap().keySet().removeIf(key -> key.collection().equals(collection));
+    }
+
+    private AtomicLong generation(final String collection) {
+        return generations.computeIfAbsent(collection, name -> new AtomicLong());
+    }
+
+    private record Key(String collection, long generation, String query) {
+    }
+}
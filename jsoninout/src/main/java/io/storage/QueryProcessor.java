@@ -1,105 +1,144 @@
 package io.storage;
 
-import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.compression.CommonsCompressionFactory;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.memory.RootAllocator;
-import org.apache.arrow.vector.BitVector;
-import org.apache.arrow.vector.DecimalVector;
-import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.FieldVector;
 import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.ipc.ArrowStreamReader;
-import org.apache.arrow.vector.types.pojo.ArrowType;
-import org.apache.arrow.vector.types.pojo.Field;
-import org.apache.arrow.vector.types.pojo.Schema;
-import org.apache.arrow.vector.util.DecimalUtility;
-import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
 
+import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
+/**
+ * Runs {@link Query queries}: the where clause is compiled against each segment and evaluated on its vectors, only
+ * the matching rows are read and only the selected fields printed. A string equality on an indexed field restricts
+ * the scan to the rows of the index, and the scan stops once {@code limit} rows are found.
+ */
 class QueryProcessor {
 
-    private final RocksDB rocksDB;
+    private final SegmentStore store;
+    private final QueryCache cache;
     private final BufferAllocator allocator;
 
-    public QueryProcessor(RocksDB rocksDB) {
-        this.rocksDB = rocksDB;
+    /**
+     * @param cache results, dropped when rows are appended to their collection
+     */
+    public QueryProcessor(SegmentStore store, QueryCache cache) {
+        this.store = store;
+        this.cache = cache;
         this.allocator = new RootAllocator(Long.MAX_VALUE);
+        store.onAppend(cache::invalidate);
     }
 
-    public void processQuery(String query) {
-        // Assuming a basic query structure
+    public void processQuery(String text) {
         try {
-            final QueryParams queryParams = QueryParams.of(query);
-            byte[] arrowData = rocksDB.get(queryParams.name().getBytes());
-            if (arrowData != null) {
-                processArrowData(arrowData, queryParams);
-            } else {
-                System.out.println("Collection not found: " + queryParams.name());
-            }
+            final Query query = Query.parse(text);
+            System.out.print(cache.get(query.collection(), text, () -> find(query)));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private void processArrowData(byte[] arrowData, QueryParams queryParams) throws IOException {
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(arrowData);
-             var reader = new ArrowStreamReader(bais, allocator)) {
-            reader.loadNextBatch();
-            try (final VectorSchemaRoot root = reader.getVectorSchemaRoot();) {
-
-                final Schema schema = root.getSchema();
-                final Field field = schema.findField(queryParams.path());
-                if (field.getFieldType().getType() instanceof ArrowType.Utf8) {
-                    VarCharVector vector = (VarCharVector) root.getVector(field);
-                    for (int i = 0; i < root.getRowCount(); i++) {
-                        if (Arrays.equals(vector.get(i), queryParams.value.getBytes())) {
-                            final int index = i;
-                            schema.getFields().forEach(f -> {
-                                if (f.getFieldType().getType() instanceof ArrowType.Utf8) {
-                                    final VarCharVector vectorResult = (VarCharVector) root.getVector(f);
-                                    if (!vectorResult.isNull(index)) {
-                                        System.out.println(f.getName() + ": " + new String(vectorResult.get(index)));
-                                    }
-                                } else if (f.getFieldType().getType() instanceof ArrowType.Int) {
-                                    final IntVector vectorResult = (IntVector) root.getVector(f);
-                                    if (!vectorResult.isNull(index)) {
-                                        System.out.println(f.getName() + ": " + vectorResult.get(index));
-                                    }
-                                } else if (f.getFieldType().getType() instanceof ArrowType.Bool) {
-                                    final BitVector vectorResult = (BitVector) root.getVector(f);
-                                    if (!vectorResult.isNull(index)) {
-                                        System.out.println(f.getName() + ": " + vectorResult.get(index));
-                                    }
-                                } else if (f.getFieldType().getType() instanceof ArrowType.Decimal) {
-                                    final DecimalVector vectorResult = (DecimalVector) root.getVector(f);
-                                    if (!vectorResult.isNull(index)) {
-                                        final ArrowBuf bytebuf = vectorResult.get(index);
-                                        System.out.println(f.getName() + ": " +
-                                                DecimalUtility.getBigDecimalFromArrowBuf(bytebuf,
-                                                        0, vectorResult.getScale(), DecimalVector.TYPE_WIDTH)
-                                        );
-                                    }
-                                }
-                            });
-                            System.out.println("-----");
-                        }
-                    }
-                } else {
-                    throw new UnsupportedOperationException("test text");
+    private String find(Query query) {
+        final Scan scan = new Scan(query);
+        try {
+            for (Condition.Comparison lookup : query.lookups()) {
+                final byte[] value = ((String) lookup.value()).getBytes(StandardCharsets.UTF_8);
+                if (store.forEachMatch(query.collection(), lookup.field(), value, scan::segment)) {
+                    return scan.out.toString();
                 }
             }
+            if (!store.forEach(query.collection(), (key, segment) -> scan.segment(segment, null))) {
+                scan.out.append("Collection not found: ").append(query.collection()).append('\n');
+            }
+            return scan.out.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RocksDBException e) {
+            throw new IllegalStateException("Can't read " + query.collection(), e);
         }
     }
 
-    private record QueryParams(String name, String path, String value) {
+    private final class Scan {
+        private final Query query;
+        private final StringBuilder out = new StringBuilder();
+        private int remaining;
+
+        private Scan(Query query) {
+            this.query = query;
+            this.remaining = query.limit();
+        }
+
+        /**
+         * Prints the matching rows of the segment.
+         *
+         * @param candidates rows which may match, all of them if null
+         * @return false once the limit is reached
+         */
+        boolean segment(byte[] arrowData, @Nullable BitSet candidates) throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            try (ByteArrayInputStream bais = new ByteArrayInputStream(arrowData);
+                 var reader = new ArrowStreamReader(bais, allocator, CommonsCompressionFactory.INSTANCE)) {
+                reader.loadNextBatch();
+                final VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                // every segment has its own schema, a condition on fields it lacks skips it whole
+                final Condition.RowFilter filter = query.where() != null
+                        ? query.where().compile(root)
+                        : Condition.RowFilter.ALL;
+                if (filter == Condition.RowFilter.NONE) {
+                    return true;
+                }
+                final List<FieldVector> projection = projection(root);
+                final int rowCount = root.getRowCount();
+                int row = candidates != null ? candidates.nextSetBit(0) : 0;
+                while (row >= 0 && row < rowCount && remaining > 0) {
+                    if (filter.test(row)) {
+                        print(projection, row);
+                        remaining--;
+                    }
+                    row = candidates != null ? candidates.nextSetBit(row + 1) : row + 1;
+                }
+            }
+            return remaining > 0;
+        }
 
-        public static QueryParams of(String q) {
-            final String[] split = q.split(" ", 3);
-            return new QueryParams(split[0], split[1], split[2]);
+        private List<FieldVector> projection(VectorSchemaRoot root) {
+            if (query.fields().isEmpty()) {
+                return root.getFieldVectors();
+            }
+            final List<FieldVector> projection = new ArrayList<>(query.fields().size());
+            for (String field : query.fields()) {
+                final FieldVector vector = root.getVector(field);
+                if (vector != null) {
+                    projection.add(vector);
+                }
+            }
+            return projection;
         }
 
+        private void print(List<FieldVector> projection, int row) {
+            for (FieldVector vector : projection) {
+                if (!vector.isNull(row)) {
+                    final Object value = vector instanceof VarCharVector strings
+                            ? new String(strings.get(row), StandardCharsets.UTF_8)
+                            : vector.getObject(row);
+                    out.append(vector.getName()).append(": ").append(value).append('\n');
+                }
+            }
+            out.append("-----\n");
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,184 @@
+package io.storage;
+
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.WriteBatch;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-field indexes of string values, kept in their own column family. An index maps every (collection, field, value)
+ * to the positions of the rows holding it, one key per row:
+ * <pre>
+ *     [0][collection][0][field]                                    definition of an index
+ *     [1][collection][0][field][0][value length:4][value][segment:4][row:4]   entry
+ * </pre>
+ * Entries are written in the same batch as the segments they point to.
+ */
+class SecondaryIndex {
+
+    static final String COLUMN_FAMILY = "index";
+
+    private static final byte DEFINITION = 0;
+    private static final byte ENTRY = 1;
+
+    private final RocksDB rocksDB;
+    private final ColumnFamilyHandle family;
+    private final Map<String, Set<String>> fields = new HashMap<>();
+
+    SecondaryIndex(final RocksDB rocksDB, final ColumnFamilyHandle family) {
+        this.rocksDB = rocksDB;
+        this.family = family;
+    }
+
+    /**
+     * @return indexed fields of the collection
+     */
+    Set<String> fields(final String collection) throws RocksDBException {
+        synchronized (fields) {
+            Set<String> indexed = fields.get(collection);
+            if (indexed == null) {
+                indexed = ConcurrentHashMap.newKeySet();
+                final byte[] prefix = definition(collection, "");
+                try (Slice upperBound = new Slice(upperBound(prefix));
+                     ReadOptions options = new ReadOptions().setIterateUpperBound(upperBound);
+                     RocksIterator iterator = rocksDB.newIterator(family, options)) {
+                    for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                        final byte[] key = iterator.key();
+                        indexed.add(new String(key, prefix.length, key.length - prefix.length));
+                    }
+                    iterator.status();
+                }
+                fields.put(collection, indexed);
+            }
+            return indexed;
+        }
+    }
+
+    /**
+     * Records the index of the field in the batch, {@link #fields(String)} lists it once the batch is written and
+     * {@link #defined(String, String)} is called.
+     */
+    void define(final WriteBatch batch, final String collection, final String field) throws RocksDBException {
+        batch.put(family, definition(collection, field), new byte[0]);
+    }
+
+    void defined(final String collection, final String field) throws RocksDBException {
+        fields(collection).add(field);
+    }
+
+    /**
+     * Adds the entries of the string columns among {@code indexed} of a segment to the batch.
+     */
+    void put(final WriteBatch batch,
+             final String collection,
+             final Set<String> indexed,
+             final int segment,
+             final VectorSchemaRoot root) throws RocksDBException {
+        for (String field : indexed) {
+            final FieldVector vector = root.getVector(field);
+            if (vector instanceof VarCharVector values) {
+                for (int row = 0; row < root.getRowCount(); row++) {
+                    if (!values.isNull(row)) {
+                        batch.put(family, entry(collection, field, values.get(row), segment, row), new byte[0]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the removal of every entry of a segment to the batch.
+     */
+    void delete(final WriteBatch batch,
+                final String collection,
+                final int segment,
+                final VectorSchemaRoot root) throws RocksDBException {
+        for (String field : fields(collection)) {
+            final FieldVector vector = root.getVector(field);
+            if (vector instanceof VarCharVector values) {
+                for (int row = 0; row < root.getRowCount(); row++) {
+                    if (!values.isNull(row)) {
+                        batch.delete(family, entry(collection, field, values.get(row), segment, row));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return positions of the rows whose field has the value, by segment in insertion order
+     */
+    SortedMap<Integer, BitSet> find(final String collection,
+                                    final String field,
+                                    final byte[] value) throws RocksDBException {
+        final SortedMap<Integer, BitSet> rows = new TreeMap<>();
+        final byte[] prefix = entry(collection, field, value, 0, 0);
+        final int length = prefix.length - 2 * Integer.BYTES;
+        try (Slice upperBound = new Slice(entry(collection, field, value, -1, -1));
+             ReadOptions options = new ReadOptions().setIterateUpperBound(upperBound);
+             RocksIterator iterator = rocksDB.newIterator(family, options)) {
+            for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                final ByteBuffer position = ByteBuffer.wrap(iterator.key(), length, 2 * Integer.BYTES);
+                rows.computeIfAbsent(position.getInt(), segment -> new BitSet()).set(position.getInt());
+            }
+            iterator.status();
+        }
+        return rows;
+    }
+
+    private static byte[] definition(final String collection, final String field) {
+        final byte[] name = collection.getBytes();
+        final byte[] fieldName = field.getBytes();
+        return ByteBuffer.allocate(1 + name.length + 1 + fieldName.length)
+                .put(DEFINITION)
+                .put(name)
+                .put((byte) 0)
+                .put(fieldName)
+                .array();
+    }
+
+    private static byte[] entry(final String collection,
+                                final String field,
+                                final byte[] value,
+                                final int segment,
+                                final int row) {
+        final byte[] name = collection.getBytes();
+        final byte[] fieldName = field.getBytes();
+        return ByteBuffer.allocate(1 + name.length + 1 + fieldName.length + 1 + Integer.BYTES + value.length
+                        + 2 * Integer.BYTES)
+                .put(ENTRY)
+                .put(name)
+                .put((byte) 0)
+                .put(fieldName)
+                .put((byte) 0)
+                .putInt(value.length)
+                .put(value)
+                .putInt(segment)
+                .putInt(row)
+                .array();
+    }
+
+    /**
+     * @return the smallest key greater than every key starting with the prefix, which doesn't end with 0xFF
+     */
+    private static byte[] upperBound(final byte[] prefix) {
+        final byte[] bound = prefix.clone();
+        bound[bound.length - 1]++;
+        return bound;
+    }
+}
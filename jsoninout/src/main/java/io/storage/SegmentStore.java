@@ -0,0 +1,518 @@
+package io.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Collections stored as sequences of immutable arrow streams, the segments, under {@code [collection][0][sequence:4]}
+ * keys. Every segment has its own schema, so an insert only writes its rows whatever the collection holds. The
+ * compaction merges runs of small consecutive segments into the first of them. Fields can be indexed with a
+ * {@link SecondaryIndex}, which is kept in step with the segments.
+ */
+@Slf4j
+class SegmentStore implements AutoCloseable {
+
+    // segments from this size on are left as they are by the compaction
+    private static final int TARGET_SEGMENT_SIZE = 1 << 20;
+    // fewest small segments worth rewriting into one
+    private static final int MIN_MERGED_SEGMENTS = 4;
+    // index entries written at once while an index is created
+    private static final int INDEX_BATCH_SIZE = 100_000;
+
+    private final RocksDB rocksDB;
+    private final CompressionUtil.CodecType codec;
+    private final SecondaryIndex index;
+    // appends write index entries of the fields indexed when they start, an index is created in between appends
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final BufferAllocator allocator;
+    private final Map<String, AtomicInteger> sequences = new HashMap<>();
+    private final Set<String> appended = ConcurrentHashMap.newKeySet();
+    // open appends by collection, their segments must stay where they are until they are committed
+    private final Map<String, Integer> pinned = new HashMap<>();
+    private final List<Consumer<String>> appendListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "segment-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param indexFamily column family of the {@link SecondaryIndex}
+     * @param codec       compression of the stored record batches, readers detect it from the data
+     */
+    SegmentStore(final RocksDB rocksDB, final ColumnFamilyHandle indexFamily, final CompressionUtil.CodecType codec) {
+        this.rocksDB = rocksDB;
+        this.codec = codec;
+        this.index = new SecondaryIndex(rocksDB, indexFamily);
+        this.allocator = new RootAllocator(Long.MAX_VALUE);
+    }
+
+    /**
+     * Starts appending segments to the collection. They are readable as soon as they are stored, and removed again
+     * when the append is closed without {@link Append#commit()}. The compaction leaves the collection alone meanwhile.
+     */
+    synchronized Append begin(final String collection) {
+        pinned.merge(collection, 1, Integer::sum);
+        return new Append(collection);
+    }
+
+    /**
+     * Stores the rows of the root as the next segment of the collection, with their entries in its indexes.
+     *
+     * @return sequence of the segment
+     */
+    private int append(final String collection, final VectorSchemaRoot root) throws IOException, RocksDBException {
+        final byte[] segment = write(root);
+        final int sequence;
+        indexLock.readLock().lock();
+        try (WriteBatch batch = new WriteBatch();
+             WriteOptions options = new WriteOptions()) {
+            sequence = sequence(collection).incrementAndGet();
+            batch.put(key(collection, sequence), segment);
+            index.put(batch, collection, index.fields(collection), sequence, root);
+            rocksDB.write(options, batch);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        appended.add(collection);
+        appendListeners.forEach(listener -> listener.accept(collection));
+        return sequence;
+    }
+
+    /**
+     * Removes the segments of the collection with their index entries, in one write.
+     */
+    private void remove(final String collection, final List<Integer> sequences) throws IOException, RocksDBException {
+        indexLock.readLock().lock();
+        try (WriteBatch batch = new WriteBatch();
+             WriteOptions options = new WriteOptions()) {
+            for (int sequence : sequences) {
+                final byte[] key = key(collection, sequence);
+                final byte[] segment = rocksDB.get(key);
+                if (segment == null) {
+                    continue;
+                }
+                try (ArrowStreamReader reader = reader(segment)) {
+                    reader.loadNextBatch();
+                    index.delete(batch, collection, sequence, reader.getVectorSchemaRoot());
+                }
+                batch.delete(key);
+            }
+            rocksDB.write(options, batch);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        log.info("Removed {} segments of {}", sequences.size(), collection);
+        appendListeners.forEach(listener -> listener.accept(collection));
+    }
+
+    private synchronized void unpin(final String collection) {
+        pinned.computeIfPresent(collection, (name, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * @param listener called with the collection once rows are appended to it, or removed by a failed append
+     */
+    void onAppend(final Consumer<String> listener) {
+        appendListeners.add(listener);
+    }
+
+    /**
+     * Indexes the field in the segments stored so far, then in the appended ones. Only string values are indexed.
+     */
+    synchronized void createIndex(final String collection, final String field) throws IOException, RocksDBException {
+        indexLock.writeLock().lock();
+        try (WriteBatch batch = new WriteBatch();
+             WriteOptions options = new WriteOptions()) {
+            if (index.fields(collection).contains(field)) {
+                return;
+            }
+            forEach(collection, (key, segment) -> {
+                try (ArrowStreamReader reader = reader(segment)) {
+                    reader.loadNextBatch();
+                    index.put(batch, collection, Set.of(field), sequence(key), reader.getVectorSchemaRoot());
+                }
+                if (batch.count() >= INDEX_BATCH_SIZE) {
+                    rocksDB.write(options, batch);
+                    batch.clear();
+                }
+                return true;
+            });
+            // without its definition a partly written index is ignored, and rewritten by the next attempt
+            index.define(batch, collection, field);
+            rocksDB.write(options, batch);
+            index.defined(collection, field);
+            log.info("Indexed {} of {}", field, collection);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Passes the segments of the collection which hold rows whose field has the value, with the positions of those
+     * rows, to {@code consume} until it returns false.
+     *
+     * @return false when the field isn't indexed
+     */
+    synchronized boolean forEachMatch(final String collection,
+                                      final String field,
+                                      final byte[] value,
+                                      final MatchConsumer consume) throws IOException, RocksDBException {
+        if (!index.fields(collection).contains(field)) {
+            return false;
+        }
+        for (Map.Entry<Integer, BitSet> match : index.find(collection, field, value).entrySet()) {
+            final byte[] segment = rocksDB.get(key(collection, match.getKey()));
+            if (segment != null && !consume.accept(segment, match.getValue())) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes every segment of the collection, in insertion order, to {@code consume} until it returns false.
+     *
+     * @return false when the collection has no segment
+     */
+    boolean forEach(final String collection, final SegmentConsumer consume) throws IOException, RocksDBException {
+        // migrates a collection of the single-stream layout before it is read
+        sequence(collection);
+        boolean found = false;
+        try (Slice upperBound = new Slice(key(collection, -1));
+             ReadOptions options = new ReadOptions().setIterateUpperBound(upperBound);
+             RocksIterator iterator = rocksDB.newIterator(options)) {
+            for (iterator.seek(key(collection, 0)); iterator.isValid(); iterator.next()) {
+                found = true;
+                if (!consume.accept(iterator.key(), iterator.value())) {
+                    break;
+                }
+            }
+            iterator.status();
+        }
+        return found;
+    }
+
+    /**
+     * Compacts the collections appended to since the previous run, every {@code period}.
+     */
+    void startCompaction(final Duration period) {
+        compactor.scheduleWithFixedDelay(this::compactAppended, period.toMillis(), period.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Merges every run of at least {@value #MIN_MERGED_SEGMENTS} consecutive segments, which together stay under
+     * {@value #TARGET_SEGMENT_SIZE} bytes and agree on the types of their common fields. The merged segment replaces
+     * the run in one write with the index entries, moved to their new positions, so readers see either the run or the
+     * merged segment. Holding the lock of the store, it doesn't move rows under {@link #forEachMatch}. A collection
+     * with an open {@link Append} is compacted by the next run after it is closed.
+     */
+    synchronized void compact(final String collection) throws IOException, RocksDBException {
+        if (pinned.containsKey(collection)) {
+            appended.add(collection);
+            return;
+        }
+        try (Run run = new Run(collection)) {
+            forEach(collection, (key, segment) -> {
+                run.add(key, segment);
+                return true;
+            });
+            run.flush();
+        }
+    }
+
+    private void compactAppended() {
+        // a snapshot, the compaction marks the collections it skips again
+        for (String collection : List.copyOf(appended)) {
+            appended.remove(collection);
+            try {
+                compact(collection);
+            } catch (Exception e) {
+                log.error("Can't compact {}, cause: '{}', message: '{}'", collection, e.getCause(), e.getMessage());
+            }
+        }
+    }
+
+    private AtomicInteger sequence(final String collection) throws RocksDBException {
+        synchronized (sequences) {
+            AtomicInteger sequence = sequences.get(collection);
+            if (sequence == null) {
+                sequence = new AtomicInteger(lastSequence(collection));
+                sequences.put(collection, sequence);
+            }
+            return sequence;
+        }
+    }
+
+    private int lastSequence(final String collection) throws RocksDBException {
+        final byte[] prefix = Arrays.copyOf(key(collection, 0), collection.getBytes().length + 1);
+        try (RocksIterator iterator = rocksDB.newIterator()) {
+            iterator.seekForPrev(key(collection, -1));
+            if (iterator.isValid() && Arrays.equals(iterator.key(), 0, prefix.length, prefix, 0, prefix.length)) {
+                return sequence(iterator.key());
+            }
+            iterator.status();
+        }
+
+        // collections of the single-stream layout are one stream under the name of the collection
+        final byte[] stream = rocksDB.get(collection.getBytes());
+        if (stream == null) {
+            return -1;
+        }
+        try (WriteBatch batch = new WriteBatch();
+             WriteOptions options = new WriteOptions()) {
+            batch.put(key(collection, 0), stream);
+            batch.delete(collection.getBytes());
+            rocksDB.write(options, batch);
+        }
+        log.info("Moved {} to segments", collection);
+        return 0;
+    }
+
+    private static byte[] key(final String collection, final int sequence) {
+        final byte[] name = collection.getBytes();
+        return ByteBuffer.allocate(name.length + 1 + Integer.BYTES)
+                .put(name)
+                .put((byte) 0)
+                .putInt(sequence)
+                .array();
+    }
+
+    private static int sequence(final byte[] key) {
+        return ByteBuffer.wrap(key, key.length - Integer.BYTES, Integer.BYTES).getInt();
+    }
+
+    private ArrowStreamReader reader(final byte[] segment) {
+        return new ArrowStreamReader(new ByteArrayInputStream(segment), allocator, CommonsCompressionFactory.INSTANCE);
+    }
+
+    private byte[] write(final VectorSchemaRoot root) throws IOException {
+        final DictionaryProvider.MapDictionaryProvider dictProvider =
+                new DictionaryProvider.MapDictionaryProvider();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try (ArrowStreamWriter writer = new ArrowStreamWriter(root, dictProvider, Channels.newChannel(baos),
+                IpcOption.DEFAULT, CommonsCompressionFactory.INSTANCE, codec)) {
+            writer.start();
+            writer.writeBatch();
+            writer.end();
+        }
+        return baos.toByteArray();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        compactor.shutdown();
+        if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+            log.warn("Compaction is still running");
+        }
+        allocator.close();
+    }
+
+    @FunctionalInterface
+    interface SegmentConsumer {
+        /**
+         * @return false to stop at this segment
+         */
+        boolean accept(byte[] key, byte[] segment) throws IOException, RocksDBException;
+    }
+
+    @FunctionalInterface
+    interface MatchConsumer {
+        /**
+         * @return false to stop at this segment
+         */
+        boolean accept(byte[] segment, BitSet rows) throws IOException;
+    }
+
+    /**
+     * Segments appended to a collection, kept only once committed.
+     */
+    final class Append implements AutoCloseable {
+        private final String collection;
+        private final List<Integer> sequences = new ArrayList<>();
+        private boolean committed = false;
+
+        private Append(String collection) {
+            this.collection = collection;
+        }
+
+        /**
+         * Stores the rows of the root as the next segment of the collection.
+         */
+        void add(VectorSchemaRoot root) throws IOException, RocksDBException {
+            sequences.add(append(collection, root));
+        }
+
+        /**
+         * Keeps the added segments once the append is closed.
+         */
+        void commit() {
+            committed = true;
+        }
+
+        /**
+         * Removes the added segments unless the append is committed.
+         */
+        @Override
+        public void close() throws IOException, RocksDBException {
+            try {
+                if (!committed && !sequences.isEmpty()) {
+                    remove(collection, sequences);
+                }
+            } finally {
+                unpin(collection);
+            }
+        }
+    }
+
+    /**
+     * Consecutive small segments of a collection, decoded while they are collected.
+     */
+    private final class Run implements AutoCloseable {
+        private final String collection;
+        private final List<byte[]> keys = new ArrayList<>();
+        private final List<ArrowStreamReader> readers = new ArrayList<>();
+        private final Map<String, Field> fields = new LinkedHashMap<>();
+        private long size = 0;
+
+        private Run(String collection) {
+            this.collection = collection;
+        }
+
+        void add(byte[] key, byte[] segment) throws IOException, RocksDBException {
+            if (segment.length >= TARGET_SEGMENT_SIZE) {
+                flush();
+                return;
+            }
+            if (size + segment.length > TARGET_SEGMENT_SIZE) {
+                flush();
+            }
+            final ArrowStreamReader reader = reader(segment);
+            try {
+                final Schema schema = reader.getVectorSchemaRoot().getSchema();
+                if (!fitsIn(schema)) {
+                    flush();
+                }
+                reader.loadNextBatch();
+                schema.getFields().forEach(field -> fields.putIfAbsent(field.getName(), field));
+            } catch (IOException | RocksDBException e) {
+                reader.close();
+                throw e;
+            }
+            keys.add(key);
+            readers.add(reader);
+            size += segment.length;
+        }
+
+        /**
+         * Merges the collected segments if there are enough of them, then starts a new run.
+         */
+        void flush() throws IOException, RocksDBException {
+            try {
+                if (readers.size() >= MIN_MERGED_SEGMENTS) {
+                    merge();
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private boolean fitsIn(Schema schema) {
+            for (Field field : schema.getFields()) {
+                final Field existing = fields.get(field.getName());
+                if (existing != null && !existing.getType().equals(field.getType())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void merge() throws IOException, RocksDBException {
+            try (VectorSchemaRoot merged = VectorSchemaRoot.create(new Schema(fields.values()), allocator)) {
+                merged.allocateNew();
+                int rowCount = 0;
+                for (ArrowStreamReader reader : readers) {
+                    final VectorSchemaRoot part = reader.getVectorSchemaRoot();
+                    for (FieldVector source : part.getFieldVectors()) {
+                        final FieldVector target = merged.getVector(source.getName());
+                        for (int row = 0; row < part.getRowCount(); row++) {
+                            target.copyFromSafe(row, rowCount + row, source);
+                        }
+                    }
+                    rowCount += part.getRowCount();
+                }
+                merged.setRowCount(rowCount);
+
+                try (WriteBatch batch = new WriteBatch();
+                     WriteOptions options = new WriteOptions()) {
+                    for (int i = 0; i < keys.size(); i++) {
+                        index.delete(batch, collection, sequence(keys.get(i)), readers.get(i).getVectorSchemaRoot());
+                    }
+                    batch.put(keys.get(0), write(merged));
+                    for (byte[] key : keys.subList(1, keys.size())) {
+                        batch.delete(key);
+                    }
+                    index.put(batch, collection, index.fields(collection), sequence(keys.get(0)), merged);
+                    rocksDB.write(options, batch);
+                }
+                log.debug("Merged {} segments of {}, {} rows", keys.size(), collection, rowCount);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (ArrowStreamReader reader : readers) {
+                reader.close();
+            }
+            keys.clear();
+            readers.clear();
+            fields.clear();
+            size = 0;
+        }
+    }
+}
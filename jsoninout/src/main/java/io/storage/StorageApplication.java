@@ -1,10 +1,18 @@
 package io.storage;
 
-import org.rocksdb.Options;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.DBOptions;
 import org.rocksdb.RocksDB;
 
 import java.io.File;
+import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 public class StorageApplication {
@@ -13,22 +21,29 @@ public class StorageApplication {
     public static void main(String[] args) throws Exception {
         // Initialize RocksDB
         RocksDB.loadLibrary();
-        Options options = new Options();
+        DBOptions options = new DBOptions();
         options.setCreateIfMissing(true);
+        options.setCreateMissingColumnFamilies(true);
         File baseDir = new File("/tmp/rocks", "rocksdb_data");
         {
             Files.createDirectories(baseDir.getParentFile().toPath());
             Files.createDirectories(baseDir.getAbsoluteFile().toPath());
         }
-        RocksDB rocksDB = RocksDB.open(options, baseDir.getAbsolutePath());
+        final List<ColumnFamilyDescriptor> families = List.of(
+                new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY),
+                new ColumnFamilyDescriptor(SecondaryIndex.COLUMN_FAMILY.getBytes()));
+        final List<ColumnFamilyHandle> handles = new ArrayList<>();
+        RocksDB rocksDB = RocksDB.open(options, baseDir.getAbsolutePath(), families, handles);
 
         // Read test data from JSON
-        final var insertProcessor = new InsertProcessor(rocksDB);
+        final var store = new SegmentStore(rocksDB, handles.get(1), CompressionUtil.CodecType.LZ4_FRAME);
+        store.startCompaction(Duration.ofSeconds(10));
+        final var insertProcessor = new InsertProcessor(store);
         insertProcessor.insertData("test", testData);
 
         // Query system
         final Scanner scanner = new Scanner(System.in);
-        final var queryProcessor = new QueryProcessor(rocksDB);
+        final var queryProcessor = new QueryProcessor(store, new QueryCache());
 
         //test on test
         queryProcessor.processQuery("test foo bar");
@@ -37,17 +52,29 @@ public class StorageApplication {
         while (true) {
             System.out.println("Enter query (or 'exit' to quit)");
             System.out.println("Query: _find {collection_name} {field_name} {value}");
+            System.out.println("       _find {collection_name} [select {fields}] [where {conditions}] [limit {rows}]");
             System.out.println("Insert: _insert {collection_name} {jsonArray}");
+            System.out.println("Import: _import {collection_name} {jsonArrayFile}");
+            System.out.println("Index: _index {collection_name} {field_name}");
             final String query = scanner.nextLine().trim();
 
             if (query.equalsIgnoreCase("exit")) {
                 break;
             }
-            if (query.startsWith("_update")) {
-                final String[] split = query.replace("_update", "")
-                        .trim()
-                        .split(" ", 2);
-                insertProcessor.insertData(split[0], split[1]);
+            if (query.startsWith("_insert") || query.startsWith("_update")) {
+                // the command, the collection and the rest
+                final String[] split = query.split("\\s+", 3);
+                insertProcessor.insertData(split[1], split[2]);
+            }
+            if (query.startsWith("_import")) {
+                final String[] split = query.split("\\s+", 3);
+                try (InputStream json = Files.newInputStream(Path.of(split[2]))) {
+                    insertProcessor.insertData(split[1], json);
+                }
+            }
+            if (query.startsWith("_index")) {
+                final String[] split = query.split("\\s+", 3);
+                store.createIndex(split[1], split[2]);
             }
             if (query.startsWith("_find")) {
                 queryProcessor.processQuery(query.replace("_find", "").trim());
@@ -55,6 +82,9 @@ public class StorageApplication {
         }
 
         // Close resources
+        insertProcessor.close();
+        store.close();
+        handles.forEach(ColumnFamilyHandle::close);
         rocksDB.close();
         options.close();
     }
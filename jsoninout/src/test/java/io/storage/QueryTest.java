@@ -0,0 +1,83 @@
+package io.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryTest {
+
+    @Test
+    void betweenIsFollowedByAnotherConjunct() {
+        final Query query = Query.parse("people where age between 18 and 65 and name = 'ann'");
+
+        final Condition.Comparison name = new Condition.Comparison("name", Condition.Operator.EQ, "ann");
+        assertEquals(new Condition.And(List.of(
+                new Condition.And(List.of(
+                        new Condition.Comparison("age", Condition.Operator.GE, new BigDecimal("18")),
+                        new Condition.Comparison("age", Condition.Operator.LE, new BigDecimal("65")))),
+                name)), query.where());
+        assertEquals(List.of(name), query.lookups());
+    }
+
+    @Test
+    void doubledQuoteIsAQuote() {
+        assertEquals(new Condition.Comparison("name", Condition.Operator.EQ, "O'Brien"),
+                Query.parse("people where name = 'O''Brien'").where());
+        assertEquals(new Condition.Comparison("name", Condition.Operator.EQ, "'"),
+                Query.parse("people where name = ''''").where());
+        assertEquals(new Condition.Comparison("name", Condition.Operator.EQ, ""),
+                Query.parse("people where name = ''").where());
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("people where name = 'O''Brien"));
+    }
+
+    @Test
+    void quotedIdentifiers() {
+        final Query query = Query.parse("\"our people\" select \"first name\", age where \"e-mail?\" prefix 'ann@'");
+
+        assertEquals("our people", query.collection());
+        assertEquals(List.of("first name", "age"), query.fields());
+        assertEquals(new Condition.Comparison("e-mail?", Condition.Operator.PREFIX, "ann@"), query.where());
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("people select \"first name"));
+    }
+
+    @Test
+    void limitZero() {
+        final Query query = Query.parse("people limit 0");
+
+        assertEquals("people", query.collection());
+        assertEquals(List.of(), query.fields());
+        assertNull(query.where());
+        assertEquals(0, query.limit());
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("people select name, age limit -1"));
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("people where age > 1 limit 1.5"));
+    }
+
+    @Test
+    void equalityOfAField() {
+        final Query query = Query.parse("people city New York");
+
+        assertEquals(new Condition.Comparison("city", Condition.Operator.EQ, "New York"), query.where());
+        assertEquals(List.of(), query.fields());
+        assertEquals(Integer.MAX_VALUE, query.limit());
+    }
+
+    @Test
+    void equalityOfAFieldNamedLikeAKeyword() {
+        assertEquals(new Condition.Comparison("select", Condition.Operator.EQ, "ann smith"),
+                Query.parse("people select ann smith").where());
+        assertEquals(new Condition.Comparison("where", Condition.Operator.EQ, "Oslo"),
+                Query.parse("people where Oslo").where());
+        assertEquals(new Condition.Comparison("limit", Condition.Operator.EQ, "none"),
+                Query.parse("people limit none").where());
+        // both forms apply, the first one wins
+        assertEquals(10, Query.parse("people limit 10").limit());
+        // the symbols of the first form keep its errors
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("people where age >"));
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("people where name = 'ann"));
+    }
+}
@@ -0,0 +1,150 @@
+package io.storage;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.DBOptions;
+import org.rocksdb.RocksDB;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentStoreTest {
+
+    private static final String COLLECTION = "people";
+    private static final String PEOPLE = """
+            [
+              {"name": "ann", "age": 31},
+              {"name": "bob", "age": 42, "city": "Lyon"},
+              {"name": "ann", "city": "Oslo"},
+              {"name": "eve", "age": 27},
+              {"age": 55, "city": "Lyon"},
+              {"name": "bob", "age": 19},
+              {"name": "ann", "age": 64, "city": "Rome"},
+              {"name": "joe"},
+              {"name": "bob", "city": "Oslo"},
+              {"name": "eve", "age": 38}
+            ]
+            """;
+
+    @TempDir
+    Path directory;
+
+    private DBOptions options;
+    private final List<ColumnFamilyHandle> handles = new ArrayList<>();
+    private RocksDB rocksDB;
+    private SegmentStore store;
+    private BufferAllocator allocator;
+
+    @BeforeEach
+    void open() throws Exception {
+        RocksDB.loadLibrary();
+        options = new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true);
+        rocksDB = RocksDB.open(options, directory.toString(), List.of(
+                new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY),
+                new ColumnFamilyDescriptor(SecondaryIndex.COLUMN_FAMILY.getBytes())), handles);
+        store = new SegmentStore(rocksDB, handles.get(1), CompressionUtil.CodecType.LZ4_FRAME);
+        allocator = new RootAllocator(Long.MAX_VALUE);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        allocator.close();
+        store.close();
+        handles.forEach(ColumnFamilyHandle::close);
+        rocksDB.close();
+        options.close();
+    }
+
+    @Test
+    void compactionKeepsTheRowsAndTheirIndexEntries() throws Exception {
+        store.createIndex(COLLECTION, "name");
+        try (InsertProcessor insertProcessor = new InsertProcessor(store, 2)) {
+            insertProcessor.insertData(COLLECTION, PEOPLE);
+        }
+        final List<Map<String, String>> rows = rows();
+        final List<Map<String, String>> anns = matches("ann");
+        final List<Map<String, String>> bobs = matches("bob");
+        assertEquals(5, segmentCount());
+        assertEquals(10, rows.size());
+        assertEquals(3, anns.size());
+
+        store.compact(COLLECTION);
+
+        assertEquals(1, segmentCount());
+        assertEquals(rows, rows());
+        assertEquals(anns, matches("ann"));
+        assertEquals(bobs, matches("bob"));
+        assertTrue(matches("zoe").isEmpty());
+    }
+
+    private int segmentCount() throws Exception {
+        final int[] count = {0};
+        store.forEach(COLLECTION, (key, segment) -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    private List<Map<String, String>> rows() throws Exception {
+        final List<Map<String, String>> rows = new ArrayList<>();
+        store.forEach(COLLECTION, (key, segment) -> {
+            read(segment, null, rows);
+            return true;
+        });
+        return rows;
+    }
+
+    private List<Map<String, String>> matches(String name) throws Exception {
+        final List<Map<String, String>> rows = new ArrayList<>();
+        assertTrue(store.forEachMatch(COLLECTION, "name", name.getBytes(StandardCharsets.UTF_8), (segment, match) -> {
+            read(segment, match, rows);
+            return true;
+        }));
+        return rows;
+    }
+
+    /**
+     * Adds the non-null values of the rows of the segment, all of them when {@code selected} is null.
+     */
+    private void read(byte[] segment, BitSet selected, List<Map<String, String>> rows) throws IOException {
+        try (ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(segment), allocator,
+                CommonsCompressionFactory.INSTANCE)) {
+            reader.loadNextBatch();
+            final VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            for (int row = 0; row < root.getRowCount(); row++) {
+                if (selected != null && !selected.get(row)) {
+                    continue;
+                }
+                final Map<String, String> values = new LinkedHashMap<>();
+                for (FieldVector vector : root.getFieldVectors()) {
+                    if (!vector.isNull(row)) {
+                        values.put(vector.getName(), String.valueOf(vector.getObject(row)));
+                    }
+                }
+                rows.add(values);
+            }
+        }
+    }
+}
@@ -1,39 +1,53 @@
 package io.storage;
 
 //import com.google.common.base.Stopwatch;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.storage.arrow.Allocators;
+import io.storage.arrow.ArrowMetrics;
 import io.storage.arrow.BatchReader;
 import io.storage.arrow.BatchWriter;
+import io.storage.arrow.Dataset;
+import io.storage.arrow.DatasetCatalog;
 import io.storage.arrow.RocksDbArrowReader;
+import io.storage.arrow.WritePipeline;
+import io.storage.arrow.query.Batch;
+import io.storage.arrow.query.Condition;
+import io.storage.arrow.query.GroupBy;
+import io.storage.arrow.query.Selection;
 import io.storage.arrow.t.ArrowSchemas;
+import io.storage.arrow.t.CompressionBenchmarkApplication;
 import io.storage.arrow.t.FilterSingleColumnApplication;
 import io.storage.arrow.t.GenerateRandomDataApplication;
 import io.storage.arrow.t.Person;
 import io.storage.arrow.t.ProcessDataApplication;
+import io.storage.arrow.t.ReadContentionApplication;
+import io.storage.arrow.t.ScanAllocationBenchmarkApplication;
 import io.storage.rocks.KVRepository;
-import io.storage.rocks.RocksDBRepository;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import okio.ByteString;
-import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.UInt4Vector;
-import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
-import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.compression.CompressionUtil;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
 import org.springframework.util.StopWatch;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
 
 @Slf4j
+@AllArgsConstructor
 @SpringBootApplication
 public class StorageApplication implements CommandLineRunner {
-    private final KVRepository<byte[], byte[]> repository = new RocksDBRepository();
+    // Street ending in 'way'
+    private static final Condition STREET_FILTER = Condition.suffix("address.street", "way");
+    // people written in the column layout too
+    private static final int COLUMN_PEOPLE = 1_000_000;
+
+    private final KVRepository<byte[], byte[]> repository;
 
     public static void main(String[] args) throws IOException {
         log.info("Starting the storage");
@@ -42,11 +56,18 @@ public class StorageApplication implements CommandLineRunner {
         log.info("Storage finished");
     }
 
+    @Bean
+    public static MeterBinder arrowMetrics() {
+        return ArrowMetrics::bindAllocators;
+    }
+
     @Override
     public void run(String... args) throws IOException {
         log.info("EXECUTING : command line runner");
+        final DatasetCatalog catalog = new DatasetCatalog(repository);
 
         if (true) {
+            final Dataset dataset = catalog.getOrCreate("people-stream", CompressionUtil.CodecType.LZ4_FRAME);
             int numberOfPeople = 10_047_031;
 //            int numberOfPeople = 42_000;
             log.info("Generating {} people", numberOfPeople);
@@ -58,20 +79,37 @@ public class StorageApplication implements CommandLineRunner {
                 stopWatch.start();
                 log.info("Initiating writing");
 
-                app.writeToArrowFile(people, repository); //// writeToRocksDb
+                app.writeToArrowFile(people, repository, dataset); //// writeToRocksDb
 
                 stopWatch.stop();
                 log.info("GenerateRandomDataApplication Timing: {}", stopWatch);
             } catch (Exception e) {
                 log.error("Can't write arrow to rocks", e);
             }
+            final Dataset columnsDataset = catalog.getOrCreate(
+                    "people-columns", CompressionUtil.CodecType.LZ4_FRAME, Dataset.Layout.COLUMNS);
+            // the first people again, one key per column, for the projected scan
+            final Person[] columnPeople = Arrays.copyOf(people, Math.min(people.length, COLUMN_PEOPLE));
+            try {
+                GenerateRandomDataApplication app = new GenerateRandomDataApplication();
+
+                StopWatch stopWatch = new StopWatch();
+                stopWatch.start();
+
+                app.writeBatches(columnPeople, repository, columnsDataset); //// writeToRocksDb, column per key
+
+                stopWatch.stop();
+                log.info("GenerateRandomDataApplication columns Timing: {}", stopWatch);
+            } catch (Exception e) {
+                log.error("Can't write arrow columns to rocks", e);
+            }
             try {
                 FilterSingleColumnApplication app = new FilterSingleColumnApplication();
 
                 StopWatch stopWatch = new StopWatch();
                 stopWatch.start();
 
-                app.doAnalytics(repository); //// readFromRocksDb
+                app.doAnalytics(repository, columnsDataset); //// readFromRocksDb, projected columns only
 
                 stopWatch.stop();
                 log.info("FilterSingleColumnApplication Timing: {}", stopWatch);
@@ -85,7 +123,7 @@ public class StorageApplication implements CommandLineRunner {
                 StopWatch stopWatch = new StopWatch();
                 stopWatch.start();
 
-                app.doAnalytics(repository); //// readFromRocksDb
+                app.doAnalytics(repository, dataset); //// readFromRocksDb
 
                 stopWatch.stop();
                 log.info("ProcessDataApplication Timing: {}", stopWatch);
@@ -95,112 +133,107 @@ public class StorageApplication implements CommandLineRunner {
         }
 
         if (false) {
-            try (RootAllocator allocator = new RootAllocator()) {
+            try {
+                new ReadContentionApplication().doBenchmark(repository);
+            } catch (Exception e) {
+                log.error("Can't ReadContentionApplication.doBenchmark on rocks", e);
+            }
+        }
 
-                try (RocksDbArrowReader reader = new RocksDbArrowReader(repository, allocator)) {
+        if (false) {
+            try {
+                new CompressionBenchmarkApplication().doBenchmark(repository, randomPeople(1_000_000));
+            } catch (Exception e) {
+                log.error("Can't CompressionBenchmarkApplication.doBenchmark on rocks", e);
+            }
+        }
+
+        if (false) {
+            try {
+                new ScanAllocationBenchmarkApplication().doBenchmark(repository, catalog.getOrCreate("people-stream"));
+            } catch (Exception e) {
+                log.error("Can't ScanAllocationBenchmarkApplication.doBenchmark on rocks", e);
+            }
+        }
+
+        if (false) {
+            try (BufferAllocator allocator = Allocators.child("storage-application")) {
+
+                try (RocksDbArrowReader reader = new RocksDbArrowReader(repository,
+                        catalog.getOrCreate("people-stream"), allocator)) {
                     final VectorSchemaRoot schema = reader.getVectorSchemaRoot();
 
-                    Map<ByteString, Long> perCityCount = new HashMap<>();
-                    Map<ByteString, Long> perCitySum = new HashMap<>();
+                    final GroupBy perCity = new GroupBy(1);
 
+                    final Batch batch = new Batch(schema, reader);
+                    final Selection selection = new Selection();
                     while (reader.loadNextBatch()) {
-                        int[] selectedIndexes = filterOnStreet(schema).elements();
-                        aggregate(schema, selectedIndexes, perCityCount, perCitySum);
+                        STREET_FILTER.select(batch, selection);
+                        aggregate(batch, selection, perCity);
                     }
 
                     // Print results
-                    for (ByteString city : perCityCount.keySet()) {
-                        double average = (double) perCitySum.get(city) / perCityCount.get(city);
-                        log.info("City = {}; Average = {}", city, average);
-                    }
+                    printAverages(perCity);
                 }
             }
         }
 
         if (true) {
+            final Dataset dataset = catalog.getOrCreate("people", CompressionUtil.CodecType.LZ4_FRAME);
             int numberOfPeople = 42;
             log.info("Generating {} people", numberOfPeople);
             Person[] people = randomPeople(numberOfPeople);
 
-            BatchWriter<Person> writer = new BatchWriter<>(
+            try (BatchWriter<Person> writer = new BatchWriter<>(
                     repository,
+                    dataset,
                     ArrowSchemas::vectorizePerson,
                     ArrowSchemas.personSchema());
-
-            if (people.length > 20_000){
+                 WritePipeline<Person, BatchWriter.StoredBatch> pipeline = writer.pipelined(
+                         Runtime.getRuntime().availableProcessors())) {
                 int index = 0;
                 while (index < people.length) {
-                    int chunkIndex = 0;
-                    final Person[]  peopleChunk = new Person[
-                            Math.min(people.length - index + chunkIndex, 20_000)
-                            ];
-                    while (chunkIndex < 20_000 && index + chunkIndex < people.length) {
-                        peopleChunk[chunkIndex] = people[index + chunkIndex];
-                        chunkIndex++;
-                    }
-                    writer.writeBatch(peopleChunk);
-
-                    index += chunkIndex;
+                    final int chunkEnd = Math.min(people.length, index + 20_000);
+                    pipeline.submit(Arrays.copyOfRange(people, index, chunkEnd));
+                    index = chunkEnd;
                 }
-            } else {
-                writer.writeBatch(people);
             }
             log.info("Written {} people", numberOfPeople);
 
-            Map<ByteString, Long> perCityCount = new ConcurrentHashMap<>();
-            Map<ByteString, Long> perCitySum = new ConcurrentHashMap<>();
-
-            BatchReader reader = new BatchReader(
-                    repository,
-                    schema -> {
-                        int[] selectedIndexes = filterOnStreet(schema).elements();
-                        aggregate(schema, selectedIndexes, perCityCount, perCitySum);
-                    });
-            reader.readBatchesInParallel();
+            // Batches are read by several threads, each one aggregates into its own group-by and reuses its own
+            // selection, the group-bys are merged once every batch is read
+            ThreadLocal<Selection> selections = ThreadLocal.withInitial(Selection::new);
+            BatchReader reader = new BatchReader(repository, dataset, STREET_FILTER::mayMatch);
+            GroupBy perCity = reader.aggregateInParallel(
+                    () -> new GroupBy(1),
+                    (partial, schema, dictionaries) -> {
+                        Selection selection = selections.get();
+                        Batch batch = new Batch(schema, dictionaries);
+                        STREET_FILTER.select(batch, selection);
+                        aggregate(batch, selection, partial);
+                    },
+                    GroupBy::merge);
             // Print results
-            for (ByteString city : perCityCount.keySet()) {
-                double average = (double) perCitySum.get(city) / perCityCount.get(city);
-                log.info("City = {}; Average = {}", city, average);
-            }
+            printAverages(perCity);
 
         }
     }
 
     /**
-     * Given the selected indexes, it copies the aggregation values into aggregation vectors
+     * Given the selected rows, it adds their age to the aggregation of their city
      *
-     * @param schemaRoot      Schema root of batch
-     * @param selectedIndexes Indexes to aggregate
-     * @param perCityCount    Aggregating counts per city
-     * @param perCitySum      Aggregating sums per city
+     * @param batch     Loaded batch
+     * @param selection Rows to aggregate
+     * @param perCity   Aggregating age per city
      */
-    private void aggregate(VectorSchemaRoot schemaRoot, int[] selectedIndexes, Map<ByteString, Long> perCityCount,
-                           Map<ByteString, Long> perCitySum) {
-        VarCharVector cityVector = (VarCharVector) ((StructVector) schemaRoot.getVector("address"))
-                .getChild("city");
-        UInt4Vector ageDataVector = (UInt4Vector) schemaRoot.getVector("age");
-
-        for (int selectedIndex : selectedIndexes) {
-            ByteString city = ByteString.of(cityVector.get(selectedIndex));
-            perCityCount.put(city, perCityCount.getOrDefault(city, 0L) + 1);
-            perCitySum.put(city, perCitySum.getOrDefault(city, 0L) + ageDataVector.get(selectedIndex));
-        }
+    private void aggregate(Batch batch, Selection selection, GroupBy perCity) {
+        perCity.add(batch.utf8("address.city"), selection, (UInt4Vector) batch.vector("age"));
     }
 
-    // Keep street ending in 'way'
-    private IntArrayList filterOnStreet(VectorSchemaRoot schemaRoot) {
-        StructVector addressVector = (StructVector) schemaRoot.getVector("address");
-        VarCharVector streetVector = (VarCharVector) addressVector.getChild("street");
-
-        IntArrayList streetSelectedIndexes = new IntArrayList();
-        byte[] suffixInBytes = "way" .getBytes();
-        for (int i = 0; i < schemaRoot.getRowCount(); i++) {
-            if (ByteString.of(streetVector.get(i)).endsWith(suffixInBytes)) {
-                streetSelectedIndexes.add(i);
-            }
+    private void printAverages(GroupBy perCity) {
+        for (int group = 0; group < perCity.groupCount(); group++) {
+            log.info("City = {}; Average = {}", perCity.key(group), perCity.avg(group, 0));
         }
-        streetSelectedIndexes.trim();
-        return streetSelectedIndexes;
     }
 
     /**
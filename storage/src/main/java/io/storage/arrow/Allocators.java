@@ -0,0 +1,23 @@
+package io.storage.arrow;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+
+/**
+ * Process-wide allocator hierarchy. Readers and writers take a child of the root for their lifetime instead of
+ * creating and tearing down a root allocator per batch, and all arrow memory is accounted in one place.
+ */
+public final class Allocators {
+
+    public static final BufferAllocator ROOT = new RootAllocator();
+
+    private Allocators() {
+    }
+
+    /**
+     * @param name shows up in allocator leak reports
+     */
+    public static BufferAllocator child(final String name) {
+        return ROOT.newChildAllocator(name, 0, Long.MAX_VALUE);
+    }
+}
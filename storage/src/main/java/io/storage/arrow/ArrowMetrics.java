@@ -0,0 +1,49 @@
+package io.storage.arrow;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Meters of the arrow layer, tagged by dataset. Writers and readers aren't Spring beans, so they record into
+ * {@link Metrics#globalRegistry}, which Spring Boot adds its registries to.
+ */
+public final class ArrowMetrics {
+
+    private ArrowMetrics() {
+    }
+
+    /**
+     * Records a batch committed to the dataset, {@code bytes} being its stored size.
+     */
+    public static void batchWritten(Dataset dataset, int rows, long bytes) {
+        Metrics.counter("storage.batches.written", "dataset", dataset.name()).increment();
+        Metrics.counter("storage.rows.written", "dataset", dataset.name()).increment(rows);
+        DistributionSummary.builder("storage.segment.bytes")
+                .tag("dataset", dataset.name())
+                .baseUnit("bytes")
+                .register(Metrics.globalRegistry)
+                .record(bytes);
+    }
+
+    public static void batchRead(Dataset dataset, int rows) {
+        Metrics.counter("storage.batches.read", "dataset", dataset.name()).increment();
+        Metrics.counter("storage.rows.read", "dataset", dataset.name()).increment(rows);
+    }
+
+    /**
+     * Current and peak off-heap memory of every allocator of the application, they are all children of
+     * {@link Allocators#ROOT}.
+     */
+    public static void bindAllocators(MeterRegistry registry) {
+        Gauge.builder("arrow.memory.allocated", Allocators.ROOT, allocator -> allocator.getAllocatedMemory())
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("arrow.memory.peak", Allocators.ROOT, allocator -> allocator.getPeakMemoryAllocation())
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("arrow.allocators", Allocators.ROOT, allocator -> allocator.getChildAllocators().size())
+                .register(registry);
+    }
+}
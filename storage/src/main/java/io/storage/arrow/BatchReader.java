@@ -1,90 +1,251 @@
 package io.storage.arrow;
 
+import io.storage.rocks.KVCursor;
 import io.storage.rocks.KVRepository;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.VectorSchemaRoot;
-import org.apache.arrow.vector.ipc.ArrowStreamReader;
-import org.jetbrains.annotations.NotNull;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
 
-import java.io.ByteArrayInputStream;
-import java.nio.ByteBuffer;
-import java.util.Optional;
-import java.util.Random;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 @Slf4j
 public class BatchReader {
 
-    private static final AtomicInteger id = new AtomicInteger(0);
+    private static final long INITIAL_SEGMENT_CAPACITY = 1 << 20;
+    private static final int DEFAULT_WORKERS = 8;
+    // segments read but not yet decoded, per worker
+    private static final int IN_FLIGHT_PER_WORKER = 2;
 
     private final KVRepository<byte[], byte[]> repository;
-    private final Consumer<VectorSchemaRoot> consume;
+    private final Dataset dataset;
+    private final BatchConsumer consume;
+    private final Predicate<BatchStats> filter;
 
     public BatchReader(
             final KVRepository<byte[], byte[]> repository,
-            final Consumer<VectorSchemaRoot> consume) {
+            final Dataset dataset,
+            final BatchConsumer consume) {
+        this(repository, dataset, stats -> true, consume);
+    }
+
+    /**
+     * Reader for {@link #aggregateInParallel}, without a shared consumer.
+     *
+     * @param filter tells from the {@link BatchStats} of a segment whether it may hold matching rows, segments
+     *               rejected by it are never read
+     */
+    public BatchReader(
+            final KVRepository<byte[], byte[]> repository,
+            final Dataset dataset,
+            final Predicate<BatchStats> filter) {
+        this(repository, dataset, filter, null);
+    }
+
+    /**
+     * @param filter tells from the {@link BatchStats} of a segment whether it may hold matching rows, segments
+     *               rejected by it are never read
+     * @throws IllegalArgumentException for a dataset of the {@link Dataset.Layout#COLUMNS} layout, which has no
+     *                                  segments, see {@link ColumnarReader}
+     */
+    public BatchReader(
+            final KVRepository<byte[], byte[]> repository,
+            final Dataset dataset,
+            final Predicate<BatchStats> filter,
+            final BatchConsumer consume) {
+        if (dataset.layout() == Dataset.Layout.COLUMNS) {
+            throw new IllegalArgumentException(
+                    dataset.name() + " stores its columns apart, read it with ColumnarReader");
+        }
         this.repository = repository;
+        this.dataset = dataset;
+        this.filter = filter;
         this.consume = consume;
-        {
-            final int sizeId = 0;
-            final byte[] sizeKey = getBytes(sizeId);
-            final Optional<byte[]> sizeKeyBytesOpt = repository.find(sizeKey);
-
-            sizeKeyBytesOpt.ifPresent(sizeKeyBytes -> {
-                ByteBuffer wrapped = ByteBuffer.wrap(sizeKeyBytes); // big-endian by default
-                int size = wrapped.getInt();
-                id.set(size);
-            });
+    }
+
+    public void readBatchesInParallel() {
+        readBatchesInParallel(DEFAULT_WORKERS);
+    }
+
+    /**
+     * @param workers number of threads decoding and consuming the segments
+     */
+    public void readBatchesInParallel(int workers) {
+        if (consume == null) {
+            throw new IllegalStateException("No consumer, use aggregateInParallel");
         }
+        readInParallel(consume, workers);
+    }
 
+    /**
+     * Reads the batches in parallel, every worker thread folding the batches it reads into its own partial state:
+     * workers never share mutable state, the partials are merged once all the segments are read.
+     *
+     * @param partial creates the state of a worker
+     * @param consume folds a batch into the state of the worker reading it
+     * @param merge   merges two partials, it may return one of them
+     * @return merged partials, an empty partial when no batch was read
+     */
+    public <S> S aggregateInParallel(Supplier<S> partial, PartialConsumer<S> consume, BinaryOperator<S> merge) {
+        return aggregateInParallel(DEFAULT_WORKERS, partial, consume, merge);
     }
 
-    @NotNull
-    private byte[] getBytes(int value) {
-        ByteBuffer bb = ByteBuffer.allocate(4);
-        bb.putInt(value);
-        return bb.array();
+    /**
+     * @param workers number of threads decoding and aggregating the segments
+     * @see #aggregateInParallel(Supplier, PartialConsumer, BinaryOperator)
+     */
+    public <S> S aggregateInParallel(int workers, Supplier<S> partial, PartialConsumer<S> consume,
+                                     BinaryOperator<S> merge) {
+        final Queue<S> partials = new ConcurrentLinkedQueue<>();
+        // The executor and its threads only live for this read
+        final ThreadLocal<S> workerState = ThreadLocal.withInitial(() -> {
+            final S state = partial.get();
+            partials.add(state);
+            return state;
+        });
+        readInParallel((batch, dictionaries) -> consume.accept(workerState.get(), batch, dictionaries), workers);
+
+        S result = partials.poll();
+        for (S next = partials.poll(); next != null; next = partials.poll()) {
+            result = merge.apply(result, next);
+        }
+        return result != null ? result : partial.get();
     }
 
-    public void readBatchesInParallel() {
-        final ExecutorCompletionService<Void> completionService =
-                //todo we need to speed up with green thread or have flexibility in configurations
-                new ExecutorCompletionService<>(Executors.newFixedThreadPool(8));
-
-        int count = id.get();
-
-        while (id.get() != 0) {
-            final int id = BatchReader.id.getAndDecrement();
-            final Optional<byte[]> bytesOpt = repository.find(getBytes(id));
-            completionService.submit(() -> {
-                try (RootAllocator allocator = new RootAllocator()) {
-                    bytesOpt.ifPresent(bytes -> {
-                        try (final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-                             ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
-                            final VectorSchemaRoot schema = reader.getVectorSchemaRoot();
-                            while (reader.loadNextBatch()) {
-                                consume.accept(schema);
-                            }
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
+    private void readInParallel(BatchConsumer consume, int workers) {
+        //todo we need to speed up with green thread
+        final ExecutorService executor = Executors.newFixedThreadPool(workers);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        // segments read ahead of the workers, copied off-heap until a worker takes them
+        final Semaphore inFlight = new Semaphore(IN_FLIGHT_PER_WORKER * workers);
+        final Set<ArrowBuf> queued = ConcurrentHashMap.newKeySet();
+
+        try (BufferAllocator allocator = Allocators.child("batch-reader-" + dataset.name())) {
+            try {
+                int count = 0;
+                final IntSet skipped = skippedSegments();
+
+                try (KVCursor<byte[], byte[]> cursor =
+                             repository.scan(dataset.segmentsFrom(), dataset.segmentsTo())) {
+                    long capacity = INITIAL_SEGMENT_CAPACITY;
+                    while (cursor.next()) {
+                        if (!skipped.isEmpty() && skipped.contains(Dataset.segmentId(cursor.key()))) {
+                            continue;
                         }
-                    });
+                        inFlight.acquire();
+                        final ArrowBuf segment = readSegment(cursor, allocator, capacity);
+                        capacity = Math.max(capacity, segment.writerIndex());
+                        queued.add(segment);
+                        completionService.submit(() -> {
+                            try {
+                                queued.remove(segment);
+                                // the reader owns the segment, it releases it when it fails to open too
+                                try (SegmentReader reader = new SegmentReader(segment, allocator)) {
+                                    final VectorSchemaRoot schema = reader.getVectorSchemaRoot();
+                                    while (!Thread.currentThread().isInterrupted() && reader.loadNextBatch()) {
+                                        ArrowMetrics.batchRead(dataset, schema.getRowCount());
+                                        consume.accept(schema, reader.getDictionaries());
+                                    }
+                                }
+                            } finally {
+                                inFlight.release();
+                            }
+                            return null;
+                        });
+                        count++;
+                    }
                 }
-                return null;
-            });
-        }
-        try {
-            while (count != 0) {
-                completionService.take().get();
-                count--;
+
+                while (count != 0) {
+                    completionService.take().get();
+                    count--;
+                }
+            } finally {
+                // no worker may touch the allocator once it is closed, the segments they never took are freed here
+                executor.shutdownNow();
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                queued.forEach(ArrowBuf::close);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Checks the statistics of every segment against the filter. Segments without statistics are always read.
+     *
+     * @return ids of the segments which can't match
+     */
+    private IntSet skippedSegments() throws IOException {
+        final IntSet skipped = new IntOpenHashSet();
+        try (KVCursor<byte[], byte[]> cursor = repository.scan(dataset.statsFrom(), dataset.statsTo())) {
+            while (cursor.next()) {
+                if (!filter.test(BatchStats.fromBytes(cursor.value()))) {
+                    skipped.add(Dataset.segmentId(cursor.key()));
+                }
+            }
+        }
+        log.debug("Skipping {} segments of {}", skipped.size(), dataset.name());
+        return skipped;
+    }
+
+    /**
+     * Copies the current segment straight from RocksDB into off-heap memory of the allocator, without a heap copy.
+     *
+     * @param capacity expected segment size, the buffer is reallocated when the segment is larger
+     * @return buffer holding the segment in {@code [0, writerIndex)}
+     */
+    private static ArrowBuf readSegment(KVCursor<byte[], byte[]> cursor, BufferAllocator allocator, long capacity) {
+        ArrowBuf segment = allocator.buffer(capacity);
+        try {
+            final int size = cursor.value(segment.nioBuffer(0, (int) segment.capacity()));
+            if (size > segment.capacity()) {
+                segment.close();
+                segment = null;
+                segment = allocator.buffer(size);
+                cursor.value(segment.nioBuffer(0, size));
+            }
+            segment.writerIndex(size);
+            return segment;
+        } catch (RuntimeException e) {
+            if (segment != null) {
+                segment.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Receives every loaded batch; dictionary-encoded columns are resolved through {@code dictionaries}.
+     */
+    @FunctionalInterface
+    public interface BatchConsumer {
+        void accept(VectorSchemaRoot batch, DictionaryProvider dictionaries);
+    }
+
+    /**
+     * Folds a loaded batch into the partial state of the worker thread reading it.
+     */
+    @FunctionalInterface
+    public interface PartialConsumer<S> {
+        void accept(S state, VectorSchemaRoot batch, DictionaryProvider dictionaries);
+    }
 }
@@ -0,0 +1,274 @@
+package io.storage.arrow;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.StructVector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Zone map of one stored batch, kept in a sidecar key next to the batch so scans can skip it without reading it.
+ * Columns are named by path, struct children as {@code address.city}. Integer and Utf8 columns are covered, other
+ * types are left out and can't be used to skip.
+ *
+ * @param rowCount     rows of the batch
+ * @param streamOffset offset of the record batch message in the dataset stream, -1 when the batch is its own segment
+ * @param streamLength length of the record batch message in the dataset stream, 0 when the batch is its own segment
+ * @param columns      statistics by column path
+ */
+public record BatchStats(int rowCount, long streamOffset, long streamLength, Map<String, ColumnStats> columns) {
+
+    private static final byte VERSION = 1;
+    // longer strings are not kept as bounds, the column then can't be used to skip
+    private static final int MAX_BOUND_LENGTH = 64;
+    // bits of the linear counting sketch behind the distinct estimates
+    private static final int SKETCH_BITS = 1 << 13;
+
+    /**
+     * Computes the statistics of a batch, before any dictionary encoding.
+     */
+    public static BatchStats of(VectorSchemaRoot batch, long streamOffset, long streamLength) {
+        final Map<String, ColumnStats> columns = new LinkedHashMap<>();
+        for (FieldVector vector : batch.getFieldVectors()) {
+            collect(vector, vector.getName(), batch.getRowCount(), columns);
+        }
+        return new BatchStats(batch.getRowCount(), streamOffset, streamLength, columns);
+    }
+
+    public static BatchStats of(VectorSchemaRoot batch) {
+        return of(batch, -1, 0);
+    }
+
+    /**
+     * @return false only if no row of the column can be in {@code [min, max]}
+     */
+    public boolean mayOverlap(String column, long min, long max) {
+        final ColumnStats stats = columns.get(column);
+        if (stats == null || stats.min() == null) {
+            return true;
+        }
+        return stats.nullCount() < rowCount && stats.longMin() <= max && min <= stats.longMax();
+    }
+
+    /**
+     * @return false only if no row of the Utf8 column can be {@code value}
+     */
+    public boolean mayContain(String column, byte[] value) {
+        final ColumnStats stats = columns.get(column);
+        if (stats == null || stats.min() == null) {
+            return true;
+        }
+        return stats.nullCount() < rowCount
+                && Arrays.compareUnsigned(stats.min(), value) <= 0
+                && Arrays.compareUnsigned(value, stats.max()) <= 0;
+    }
+
+    /**
+     * @return false only if no row of the column can start with {@code prefix}
+     */
+    public boolean mayStartWith(String column, byte[] prefix) {
+        final ColumnStats stats = columns.get(column);
+        if (stats == null || stats.min() == null) {
+            return true;
+        }
+        if (stats.nullCount() == rowCount) {
+            return false;
+        }
+        // values starting with the prefix sort between the prefix and the longest string starting with it
+        final byte[] maxPrefix = Arrays.copyOf(stats.max(), Math.min(stats.max().length, prefix.length));
+        final byte[] minPrefix = Arrays.copyOf(stats.min(), Math.min(stats.min().length, prefix.length));
+        return Arrays.compareUnsigned(maxPrefix, prefix) >= 0 && Arrays.compareUnsigned(minPrefix, prefix) <= 0;
+    }
+
+    public byte[] toBytes() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + columns.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeInt(rowCount);
+            out.writeLong(streamOffset);
+            out.writeLong(streamLength);
+            out.writeInt(columns.size());
+            for (Map.Entry<String, ColumnStats> entry : columns.entrySet()) {
+                final ColumnStats stats = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(stats.nullCount());
+                out.writeInt(stats.distinctCount());
+                writeBound(out, stats.min());
+                writeBound(out, stats.max());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static BatchStats fromBytes(byte[] value) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            final byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unknown batch statistics version " + version);
+            }
+            final int rowCount = in.readInt();
+            final long streamOffset = in.readLong();
+            final long streamLength = in.readLong();
+            final int columnCount = in.readInt();
+            final Map<String, ColumnStats> columns = new LinkedHashMap<>();
+            for (int i = 0; i < columnCount; i++) {
+                final String path = in.readUTF();
+                final int nullCount = in.readInt();
+                final int distinctCount = in.readInt();
+                columns.put(path, new ColumnStats(nullCount, distinctCount, readBound(in), readBound(in)));
+            }
+            return new BatchStats(rowCount, streamOffset, streamLength, columns);
+        }
+    }
+
+    private static void writeBound(DataOutputStream out, byte[] bound) throws IOException {
+        if (bound == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bound.length);
+            out.write(bound);
+        }
+    }
+
+    private static byte[] readBound(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bound = new byte[length];
+        in.readFully(bound);
+        return bound;
+    }
+
+    private static void collect(FieldVector vector, String path, int rowCount, Map<String, ColumnStats> columns) {
+        if (vector instanceof StructVector) {
+            for (FieldVector child : vector.getChildrenFromFields()) {
+                collect(child, path + "." + child.getName(), rowCount, columns);
+            }
+        } else if (vector instanceof BaseIntVector ints) {
+            columns.put(path, integerStats(ints, rowCount));
+        } else if (vector instanceof VarCharVector strings) {
+            columns.put(path, utf8Stats(strings, rowCount));
+        }
+    }
+
+    private static ColumnStats integerStats(BaseIntVector vector, int rowCount) {
+        final long[] sketch = new long[SKETCH_BITS / 64];
+        int nullCount = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < rowCount; i++) {
+            if (vector.isNull(i)) {
+                nullCount++;
+            } else {
+                final long value = vector.getValueAsLong(i);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                mark(sketch, HashCommon.mix(value));
+            }
+        }
+        if (nullCount == rowCount) {
+            return new ColumnStats(nullCount, 0, null, null);
+        }
+        return new ColumnStats(nullCount, estimate(sketch, rowCount - nullCount), longBound(min), longBound(max));
+    }
+
+    private static ColumnStats utf8Stats(VarCharVector vector, int rowCount) {
+        final long[] sketch = new long[SKETCH_BITS / 64];
+        int nullCount = 0;
+        byte[] min = null;
+        byte[] max = null;
+        boolean bounded = true;
+        for (int i = 0; i < rowCount; i++) {
+            if (vector.isNull(i)) {
+                nullCount++;
+                continue;
+            }
+            mark(sketch, HashCommon.mix((long) vector.hashCode(i)));
+            if (bounded) {
+                final byte[] value = vector.get(i);
+                if (value.length > MAX_BOUND_LENGTH) {
+                    bounded = false;
+                } else {
+                    if (min == null || Arrays.compareUnsigned(value, min) < 0) {
+                        min = value;
+                    }
+                    if (max == null || Arrays.compareUnsigned(value, max) > 0) {
+                        max = value;
+                    }
+                }
+            }
+        }
+        return bounded
+                ? new ColumnStats(nullCount, estimate(sketch, rowCount - nullCount), min, max)
+                : new ColumnStats(nullCount, estimate(sketch, rowCount - nullCount), null, null);
+    }
+
+    private static void mark(long[] sketch, long hash) {
+        final int bit = (int) (hash & (SKETCH_BITS - 1));
+        sketch[bit >>> 6] |= 1L << bit;
+    }
+
+    /**
+     * Linear counting: distinct ~ -m * ln(empty bits / m), capped by the number of values.
+     */
+    private static int estimate(long[] sketch, int values) {
+        int set = 0;
+        for (long word : sketch) {
+            set += Long.bitCount(word);
+        }
+        final int empty = SKETCH_BITS - set;
+        if (empty == 0) {
+            return values;
+        }
+        final double estimate = -SKETCH_BITS * Math.log((double) empty / SKETCH_BITS);
+        return (int) Math.min(values, Math.round(estimate));
+    }
+
+    private static byte[] longBound(long value) {
+        final byte[] bound = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bound[i] = (byte) value;
+            value >>= 8;
+        }
+        return bound;
+    }
+
+    /**
+     * @param nullCount     null rows
+     * @param distinctCount estimated number of distinct non-null values
+     * @param min           smallest value, big-endian long for integer columns, null when unknown
+     * @param max           largest value, same encoding as {@code min}
+     */
+    public record ColumnStats(int nullCount, int distinctCount, byte[] min, byte[] max) {
+
+        public long longMin() {
+            return toLong(min);
+        }
+
+        public long longMax() {
+            return toLong(max);
+        }
+
+        private static long toLong(byte[] bound) {
+            long value = 0;
+            for (byte b : bound) {
+                value = (value << 8) | (b & 0xFF);
+            }
+            return value;
+        }
+    }
+}
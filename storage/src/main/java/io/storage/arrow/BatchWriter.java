@@ -2,47 +2,66 @@ package io.storage.arrow;
 
 import io.storage.rocks.KVRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.dictionary.DictionaryProvider;
 import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
 import org.apache.arrow.vector.types.pojo.Schema;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
-import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
-
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes every batch as a self-contained arrow stream segment, or as one such stream per column for datasets with
+ * the {@link Dataset.Layout#COLUMNS} layout. The writer keeps its allocator, a pool of roots and
+ * its output buffers for its whole lifetime, so it has to be closed. The pool is only created by
+ * {@link #writeBatch(Object[])}, a {@link #pipelined(int) pipeline} vectorizes into roots of its own.
+ */
 @Slf4j
-public class BatchWriter<T> {
-
+public class BatchWriter<T> implements AutoCloseable {
 
-    private static final AtomicInteger id = new AtomicInteger(0);
-    public static final byte[] firstKey = getBytes(0);
+    private static final int INITIAL_SEGMENT_SIZE = 64 << 10;
 
     private final KVRepository<byte[], byte[]> repository;
+    private final Dataset dataset;
     private final Vectorizer<T> vectorizer;
     private final Schema schema;
+    private final BufferAllocator allocator;
+    // null until the first writeBatch
+    private VectorSchemaRootPool roots;
+    // leaf column paths of the columns layout, null for the segments layout
+    private final List<String> columns;
+    private final Queue<ByteArrayOutputStream> buffers = new ConcurrentLinkedQueue<>();
+    private volatile int lastSegmentSize = INITIAL_SEGMENT_SIZE;
 
     public BatchWriter(
             final KVRepository<byte[], byte[]> repository,
+            final Dataset dataset,
             final Vectorizer<T> vectorizer,
             final Schema schema) {
         this.repository = repository;
+        this.dataset = dataset;
         this.vectorizer = vectorizer;
         this.schema = schema;
-        {
-            final Optional<byte[]> sizeKeyBytesOpt = repository.find(firstKey);
-
-            sizeKeyBytesOpt.ifPresent(sizeKeyBytes -> {
-                ByteBuffer wrapped = ByteBuffer.wrap(sizeKeyBytes); // big-endian by default
-                int size = wrapped.getInt();
-                id.set(size);
-            });
+        this.allocator = Allocators.child("batch-writer-" + dataset.name());
+        if (dataset.layout() == Dataset.Layout.COLUMNS) {
+            ColumnLayout.saveSchema(repository, dataset, schema);
+            this.columns = ColumnLayout.leafPaths(schema);
+        } else {
+            this.columns = null;
         }
-
     }
 
     @NotNull
@@ -52,42 +71,145 @@ public class BatchWriter<T> {
         return bb.array();
     }
 
+    /**
+     * Allocates the next segment id of the dataset, safe to call from concurrent writers.
+     */
+    private int nextSegmentId() throws IOException {
+        final byte[] idBytes = repository.update(dataset.sequenceKey(), lastOpt -> getBytes(lastOpt
+                        .map(last -> ByteBuffer.wrap(last).getInt()) // big-endian by default
+                        .orElse(0) + 1))
+                .orElseThrow(() -> new IOException("Can't allocate segment id in " + dataset.name()));
+        return ByteBuffer.wrap(idBytes).getInt();
+    }
+
     public void writeBatch(T[] values) throws IOException {
-        DictionaryProvider.MapDictionaryProvider dictProvider = new DictionaryProvider.MapDictionaryProvider();
+        final VectorSchemaRootPool roots = roots();
+        final VectorSchemaRoot schemaRoot = borrowRoot(roots);
+        try {
+            int chunkIndex = 0;
+            while (chunkIndex < values.length) {
+                vectorizer.vectorize(values[chunkIndex], chunkIndex, schemaRoot);
+                chunkIndex++;
+            }
+            schemaRoot.setRowCount(chunkIndex);
+            log.debug("Filled chunk with {} items; {} items written", chunkIndex, chunkIndex);
 
-        try (final RootAllocator allocator = new RootAllocator();
-             final VectorSchemaRoot schemaRoot = VectorSchemaRoot.create(schema, allocator);
-             final ByteArrayOutputStream out = new ByteArrayOutputStream();
-             final ArrowStreamWriter fileWriter = new ArrowStreamWriter(schemaRoot, dictProvider, out)) {
+            commit(serialize(schemaRoot));
+        } finally {
+            roots.release(schemaRoot);
+        }
+    }
 
-            log.debug("Start writing");
-            fileWriter.start();
+    private synchronized VectorSchemaRootPool roots() {
+        if (roots == null) {
+            roots = new VectorSchemaRootPool(schema, allocator, Runtime.getRuntime().availableProcessors());
+        }
+        return roots;
+    }
 
-            {
-                schemaRoot.allocateNew();
-                int chunkIndex = 0;
-                while (chunkIndex < values.length) {
-                    vectorizer.vectorize(values[chunkIndex], chunkIndex, schemaRoot);
-                    chunkIndex++;
-                }
-                schemaRoot.setRowCount(chunkIndex);
-                log.debug("Filled chunk with {} items; {} items written", chunkIndex, chunkIndex);
-                fileWriter.writeBatch();
-                log.debug("Chunk written");
+    private static VectorSchemaRoot borrowRoot(VectorSchemaRootPool roots) throws InterruptedIOException {
+        try {
+            return roots.borrow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a batch root");
+        }
+    }
+
+    /**
+     * Creates a pipeline which vectorizes chunks on {@code workers} threads, then serializes and commits them in
+     * submission order like {@link #writeBatch(Object[])}.
+     */
+    public WritePipeline<T, StoredBatch> pipelined(final int workers) {
+        return new WritePipeline<>(allocator, schema, vectorizer, workers, workers * 2, this::serialize, this::commit);
+    }
 
-                schemaRoot.clear();
+    /**
+     * Serializes the root into a self-contained arrow stream: schema, dictionaries, one batch, end of stream. Datasets
+     * with the {@link Dataset.Layout#COLUMNS} layout get one such stream per leaf column instead.
+     * Low-cardinality string columns are dictionary-encoded against dictionaries of this batch only.
+     */
+    StoredBatch serialize(VectorSchemaRoot schemaRoot) throws IOException {
+        final int rowCount = schemaRoot.getRowCount();
+        final byte[] stats = BatchStats.of(schemaRoot).toBytes();
+
+        try (final LowCardinalityEncoder encoder = new LowCardinalityEncoder(allocator, schemaRoot);
+             final LowCardinalityEncoder.EncodedBatch encoded = encoder.encode(schemaRoot)) {
+            if (columns == null) {
+                return new StoredBatch(List.of(write(encoded.root(), encoder.getDictionaries())), stats, rowCount);
+            }
+            final List<byte[]> parts = new ArrayList<>(columns.size());
+            for (String column : columns) {
+                try (ColumnLayout.Slice slice = ColumnLayout.split(encoded.root(), column, allocator)) {
+                    parts.add(write(slice.root(), encoder.getDictionaries()));
+                }
             }
+            return new StoredBatch(parts, stats, rowCount);
+        }
+    }
 
-            log.debug("Writing done");
+    /**
+     * Output buffers are reused between batches; new ones start at the size of the last segment.
+     */
+    private byte[] write(VectorSchemaRoot root, DictionaryProvider dictionaries) throws IOException {
+        ByteArrayOutputStream out = buffers.poll();
+        if (out == null) {
+            out = new ByteArrayOutputStream(lastSegmentSize);
+        }
+        out.reset();
+        try (final ArrowStreamWriter fileWriter = new ArrowStreamWriter(root, dictionaries,
+                Channels.newChannel(out), IpcOption.DEFAULT, CommonsCompressionFactory.INSTANCE, dataset.codec())) {
+
+            log.debug("Start writing");
+            fileWriter.start();
+            fileWriter.writeBatch();
+            log.debug("Chunk written");
             fileWriter.end();
+            log.debug("Writing done");
 
+            lastSegmentSize = out.size();
+            return out.toByteArray();
+        } finally {
+            buffers.offer(out);
+        }
+    }
 
-            final byte[] byteArray = out.toByteArray();
-            final int newId = id.incrementAndGet();
-            final byte[] newIdBytes = getBytes(newId);
-            repository.save(newIdBytes, byteArray);
-            repository.save(firstKey, newIdBytes);
+    /**
+     * Stores the serialized batch as the next segment of the dataset, together with its statistics.
+     */
+    void commit(StoredBatch batch) throws IOException {
+        final int segmentId = nextSegmentId();
+        final Map<byte[], byte[]> entries = new LinkedHashMap<>();
+        if (columns == null) {
+            entries.put(dataset.segmentKey(segmentId), batch.parts().get(0));
+        } else {
+            for (int column = 0; column < batch.parts().size(); column++) {
+                entries.put(dataset.columnKey(segmentId, column), batch.parts().get(column));
+            }
         }
+        entries.put(dataset.statsKey(segmentId), batch.stats());
+        if (!repository.saveAll(entries)) {
+            throw new IOException("Can't save segment in " + dataset.name());
+        }
+        final long bytes = batch.parts().stream().mapToLong(part -> part.length).sum();
+        ArrowMetrics.batchWritten(dataset, batch.rowCount(), bytes);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (roots != null) {
+            roots.close();
+        }
+        allocator.close();
+        buffers.clear();
+    }
+
+    /**
+     * @param parts    self-contained arrow streams of the batch, one per leaf column with the columns layout
+     * @param stats    serialized {@link BatchStats} of the batch
+     * @param rowCount rows of the batch
+     */
+    public record StoredBatch(List<byte[]> parts, byte[] stats, int rowCount) {
     }
 
     @FunctionalInterface
@@ -0,0 +1,147 @@
+package io.storage.arrow;
+
+import io.storage.rocks.KVRepository;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Splitting of batches into columns for the {@link Dataset.Layout#COLUMNS} layout. A column is a leaf of the schema,
+ * a top-level field or a struct child named by its path like {@code address.city}. A struct child is stored inside
+ * copies of its parent structs holding only that child, so the struct validity travels with every child. The child
+ * is moved back into the batch once its column is written, so a pooled batch keeps the buffers of all its vectors.
+ */
+final class ColumnLayout {
+
+    private ColumnLayout() {
+    }
+
+    /**
+     * Leaf paths in depth-first order, the index of a path is its column number in the keys.
+     */
+    static List<String> leafPaths(Schema schema) {
+        final List<String> paths = new ArrayList<>();
+        for (Field field : schema.getFields()) {
+            collectLeaves(field, field.getName(), paths);
+        }
+        return paths;
+    }
+
+    private static void collectLeaves(Field field, String path, List<String> paths) {
+        if (field.getType() instanceof ArrowType.Struct) {
+            for (Field child : field.getChildren()) {
+                collectLeaves(child, path + "." + child.getName(), paths);
+            }
+        } else {
+            paths.add(path);
+        }
+    }
+
+    /**
+     * Stores the schema of the dataset, the column numbers of its batches depend on it.
+     *
+     * @throws IllegalStateException if the dataset already has another schema
+     */
+    static void saveSchema(KVRepository<byte[], byte[]> repository, Dataset dataset, Schema schema) {
+        final byte[] stored = repository.update(dataset.schemaKey(),
+                        existing -> existing.orElseGet(schema::serializeAsMessage))
+                .orElseThrow(() -> new IllegalStateException("Can't save the schema of " + dataset.name()));
+        if (!Schema.deserializeMessage(ByteBuffer.wrap(stored)).equals(schema)) {
+            throw new IllegalStateException("Dataset " + dataset.name() + " already has another schema");
+        }
+    }
+
+    static Schema loadSchema(KVRepository<byte[], byte[]> repository, Dataset dataset) throws IOException {
+        final Optional<byte[]> stored = repository.find(dataset.schemaKey());
+        if (stored.isEmpty()) {
+            throw new IOException("Dataset " + dataset.name() + " has no schema, is it a columns dataset?");
+        }
+        return Schema.deserializeMessage(ByteBuffer.wrap(stored.get()));
+    }
+
+    /**
+     * Makes a single-column root for one leaf. A top-level leaf is shared with {@code batch}; a struct child is moved
+     * out of {@code batch} into pruned copies of its parents until the slice is closed.
+     */
+    static Slice split(VectorSchemaRoot batch, String path, BufferAllocator allocator) {
+        final String[] names = path.split("\\.");
+        final FieldVector top = batch.getVector(names[0]);
+        if (names.length == 1) {
+            return new Slice(new VectorSchemaRoot(List.of(top.getField()), List.of(top), batch.getRowCount()), null,
+                    null);
+        }
+        FieldVector leaf = top;
+        for (int depth = 1; depth < names.length; depth++) {
+            leaf = ((StructVector) leaf).getChild(names[depth]);
+        }
+        final FieldVector pruned = prune((StructVector) top, names, 1, batch.getRowCount(), allocator);
+        return new Slice(new VectorSchemaRoot(List.of(pruned.getField()), List.of(pruned), batch.getRowCount()),
+                pruned, leaf);
+    }
+
+    private static StructVector prune(StructVector source,
+                                      String[] names,
+                                      int depth,
+                                      int rowCount,
+                                      BufferAllocator allocator) {
+        final FieldVector child = source.getChild(names[depth]);
+        final boolean leaf = depth + 1 == names.length;
+        final FieldVector prunedChild = leaf
+                ? child
+                : prune((StructVector) child, names, depth + 1, rowCount, allocator);
+
+        final Field field = new Field(source.getName(), source.getField().getFieldType(),
+                List.of(prunedChild.getField()));
+        final StructVector pruned = (StructVector) field.createVector(allocator);
+        pruned.allocateNew();
+        prunedChild.makeTransferPair(pruned.getChildrenFromFields().get(0)).transfer();
+        if (!leaf) {
+            // the intermediate copy is empty once transferred
+            prunedChild.close();
+        }
+        copyValidity(source, pruned, rowCount);
+        return pruned;
+    }
+
+    static void copyValidity(StructVector source, StructVector target, int rowCount) {
+        for (int i = 0; i < rowCount; i++) {
+            if (source.isNull(i)) {
+                target.setNull(i);
+            } else {
+                target.setIndexDefined(i);
+            }
+        }
+        target.setValueCount(rowCount);
+    }
+
+    /**
+     * Single-column root; closing it moves the struct child back to {@code leaf} in the batch and releases the pruned
+     * struct copies, a shared top-level vector is left as it is.
+     *
+     * @param owned pruned copy of the top-level struct, null for a top-level leaf
+     * @param leaf  vector of the batch the struct child was moved out of, null for a top-level leaf
+     */
+    record Slice(VectorSchemaRoot root, FieldVector owned, FieldVector leaf) implements AutoCloseable {
+        @Override
+        public void close() {
+            if (owned != null) {
+                FieldVector moved = owned;
+                while (moved instanceof StructVector struct) {
+                    moved = struct.getChildrenFromFields().get(0);
+                }
+                moved.makeTransferPair(leaf).transfer();
+                owned.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.storage.arrow;
+
+import io.storage.rocks.KVCursor;
+import io.storage.rocks.KVRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.types.pojo.Field;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Reads a {@link Dataset.Layout#COLUMNS} dataset, fetching only the projected columns of every batch. The projected
+ * root keeps the schema order; a struct holds only its projected children.
+ */
+@Slf4j
+public class ColumnarReader {
+
+    private final KVRepository<byte[], byte[]> repository;
+    private final Dataset dataset;
+    private final List<String> projection;
+
+    /**
+     * @param projection leaf column paths to read, like {@code age} or {@code address.city}
+     */
+    public ColumnarReader(final KVRepository<byte[], byte[]> repository,
+                          final Dataset dataset,
+                          final List<String> projection) {
+        this.repository = repository;
+        this.dataset = dataset;
+        this.projection = projection;
+    }
+
+    /**
+     * Reads the batches one after the other in write order.
+     *
+     * @param filter tells from the {@link BatchStats} of a batch whether it may hold matching rows, batches rejected
+     *               by it are never read
+     */
+    public void read(final Predicate<BatchStats> filter, final BatchReader.BatchConsumer consume) throws IOException {
+        final List<String> columns = ColumnLayout.leafPaths(ColumnLayout.loadSchema(repository, dataset));
+        // projected column numbers, in schema order so the struct children keep their order
+        final List<Integer> projected = new ArrayList<>();
+        for (int column = 0; column < columns.size(); column++) {
+            if (projection.contains(columns.get(column))) {
+                projected.add(column);
+            }
+        }
+        if (projected.size() != projection.size()) {
+            throw new IllegalArgumentException("Unknown columns in " + projection + ", " + dataset.name()
+                    + " has " + columns);
+        }
+
+        try (BufferAllocator allocator = Allocators.child("columnar-reader-" + dataset.name());
+             KVCursor<byte[], byte[]> cursor = repository.scan(dataset.statsFrom(), dataset.statsTo())) {
+            while (cursor.next()) {
+                if (filter.test(BatchStats.fromBytes(cursor.value()))) {
+                    readBatch(Dataset.segmentId(cursor.key()), projected, allocator, consume);
+                }
+            }
+        }
+    }
+
+    private void readBatch(int sequence,
+                           List<Integer> projected,
+                           BufferAllocator allocator,
+                           BatchReader.BatchConsumer consume) throws IOException {
+        final List<byte[]> keys = new ArrayList<>(projected.size());
+        for (int column : projected) {
+            keys.add(dataset.columnKey(sequence, column));
+        }
+        final List<Optional<byte[]>> values = repository.findAll(keys);
+
+        final List<SegmentReader> readers = new ArrayList<>(values.size());
+        final List<FieldVector> owned = new ArrayList<>();
+        try {
+            for (Optional<byte[]> value : values) {
+                if (value.isEmpty()) {
+                    log.warn("Batch {} of {} misses columns, skipping it", sequence, dataset.name());
+                    return;
+                }
+                final SegmentReader reader = new SegmentReader(toArrowBuf(value.get(), allocator), allocator);
+                readers.add(reader);
+                if (!reader.loadNextBatch()) {
+                    throw new IOException("Empty column in batch " + sequence + " of " + dataset.name());
+                }
+            }
+
+            final int rowCount = readers.get(0).getVectorSchemaRoot().getRowCount();
+            final DictionaryProvider.MapDictionaryProvider dictionaries = new DictionaryProvider.MapDictionaryProvider();
+            // the single-column roots of one top-level field are consecutive
+            final Map<String, List<FieldVector>> parts = new LinkedHashMap<>();
+            for (SegmentReader reader : readers) {
+                reader.exportDictionaries(dictionaries);
+                final FieldVector vector = reader.getVectorSchemaRoot().getVector(0);
+                parts.computeIfAbsent(vector.getName(), name -> new ArrayList<>()).add(vector);
+            }
+            final List<FieldVector> vectors = new ArrayList<>(parts.size());
+            for (List<FieldVector> part : parts.values()) {
+                vectors.add(merge(part, rowCount, allocator, owned));
+            }
+            final List<Field> fields = vectors.stream().map(FieldVector::getField).toList();
+            ArrowMetrics.batchRead(dataset, rowCount);
+            consume.accept(new VectorSchemaRoot(fields, vectors, rowCount), dictionaries);
+        } finally {
+            owned.forEach(FieldVector::close);
+            readers.forEach(SegmentReader::close);
+        }
+    }
+
+    /**
+     * Merges pruned copies of the same field into one vector. A single copy is used as is; copies of a struct, each
+     * holding other children, give a new struct whose children are moved out of the copies.
+     */
+    private static FieldVector merge(List<FieldVector> copies,
+                                     int rowCount,
+                                     BufferAllocator allocator,
+                                     List<FieldVector> owned) {
+        if (copies.size() == 1) {
+            return copies.get(0);
+        }
+        final Map<String, List<FieldVector>> children = new LinkedHashMap<>();
+        for (FieldVector copy : copies) {
+            for (FieldVector child : copy.getChildrenFromFields()) {
+                children.computeIfAbsent(child.getName(), name -> new ArrayList<>()).add(child);
+            }
+        }
+        final List<FieldVector> mergedChildren = new ArrayList<>(children.size());
+        for (List<FieldVector> childCopies : children.values()) {
+            mergedChildren.add(merge(childCopies, rowCount, allocator, owned));
+        }
+
+        final StructVector first = (StructVector) copies.get(0);
+        final Field field = new Field(first.getName(), first.getField().getFieldType(),
+                mergedChildren.stream().map(FieldVector::getField).toList());
+        final StructVector merged = (StructVector) field.createVector(allocator);
+        owned.add(merged);
+        merged.allocateNew();
+        for (int i = 0; i < mergedChildren.size(); i++) {
+            mergedChildren.get(i).makeTransferPair(merged.getChildrenFromFields().get(i)).transfer();
+        }
+        ColumnLayout.copyValidity(first, merged, rowCount);
+        return merged;
+    }
+
+    private static ArrowBuf toArrowBuf(byte[] value, BufferAllocator allocator) {
+        final ArrowBuf buffer = allocator.buffer(value.length);
+        buffer.setBytes(0, value);
+        buffer.writerIndex(value.length);
+        return buffer;
+    }
+}
@@ -0,0 +1,126 @@
+package io.storage.arrow;
+
+import org.apache.arrow.vector.compression.CompressionUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Named keyspace of arrow segments. Every key of a dataset starts with its id, followed by the kind of entry and
+ * a big-endian sequence number, so the segments of one dataset are contiguous and ordered.
+ * <pre>
+ * [dataset id: 4][kind: 1][sequence: 4]
+ * </pre>
+ * Kinds are the segment sequence counter, the segments and the {@link BatchStats} sidecars. Datasets with the
+ * {@link Layout#COLUMNS} layout store every column of a batch under its own key, and their schema once:
+ * <pre>
+ * [dataset id: 4][3][sequence: 4][column: 2]
+ * [dataset id: 4][4]
+ * </pre>
+ *
+ * @param name   name in the {@link DatasetCatalog}
+ * @param id     key prefix, 0 is reserved for the catalog itself
+ * @param codec  compression of the record batch bodies, readers detect it from the IPC messages
+ * @param layout how the batches of the dataset are split into entries
+ */
+public record Dataset(String name, int id, CompressionUtil.CodecType codec, Layout layout) {
+
+    static final byte SEQUENCE = 0;
+    static final byte SEGMENT = 1;
+    static final byte STATS = 2;
+    static final byte COLUMN = 3;
+    static final byte SCHEMA = 4;
+
+    static final int PREFIX_LENGTH = 5;
+    static final int KEY_LENGTH = PREFIX_LENGTH + 4;
+
+    /**
+     * Key holding the last allocated segment id
+     */
+    public byte[] sequenceKey() {
+        return key(SEQUENCE, 0);
+    }
+
+    public byte[] segmentKey(int segmentId) {
+        return key(SEGMENT, segmentId);
+    }
+
+    /**
+     * Inclusive lower bound of the segment keys
+     */
+    public byte[] segmentsFrom() {
+        return key(SEGMENT, 0);
+    }
+
+    /**
+     * Exclusive upper bound of the segment keys
+     */
+    public byte[] segmentsTo() {
+        return key((byte) (SEGMENT + 1), 0);
+    }
+
+    /**
+     * Key of the {@link BatchStats} of a segment, or of the n-th batch of a stream dataset
+     */
+    public byte[] statsKey(int sequence) {
+        return key(STATS, sequence);
+    }
+
+    /**
+     * Inclusive lower bound of the stats keys
+     */
+    public byte[] statsFrom() {
+        return key(STATS, 0);
+    }
+
+    /**
+     * Exclusive upper bound of the stats keys
+     */
+    public byte[] statsTo() {
+        return key((byte) (STATS + 1), 0);
+    }
+
+    /**
+     * Key of one column of a batch, columns are numbered in the depth-first order of the leaves of the schema
+     */
+    public byte[] columnKey(int sequence, int column) {
+        return ByteBuffer.allocate(KEY_LENGTH + 2)
+                .putInt(id)
+                .put(COLUMN)
+                .putInt(sequence)
+                .putShort((short) column)
+                .array();
+    }
+
+    /**
+     * Key of the schema of a {@link Layout#COLUMNS} dataset
+     */
+    public byte[] schemaKey() {
+        return ByteBuffer.allocate(PREFIX_LENGTH)
+                .putInt(id)
+                .put(SCHEMA)
+                .array();
+    }
+
+    public static int segmentId(byte[] key) {
+        return ByteBuffer.wrap(key, PREFIX_LENGTH, 4).getInt();
+    }
+
+    private byte[] key(byte kind, int sequence) {
+        return ByteBuffer.allocate(KEY_LENGTH)
+                .putInt(id)
+                .put(kind)
+                .putInt(sequence)
+                .array();
+    }
+
+    public enum Layout {
+        /**
+         * Every batch, or chunk of an arrow stream, is one segment
+         */
+        SEGMENTS,
+        /**
+         * Every column of a batch is one self-contained arrow stream, so scans fetch only the columns they project
+         */
+        COLUMNS
+    }
+}
@@ -0,0 +1,119 @@
+package io.storage.arrow;
+
+import io.storage.rocks.KVCursor;
+import io.storage.rocks.KVRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.compression.CompressionUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the datasets stored in one repository. The catalog lives under the reserved dataset id 0:
+ * <pre>
+ * [0: 4][0]              last allocated dataset id
+ * [0: 4][1][name: utf8]  dataset id: 4, codec: 1, layout: 1
+ * </pre>
+ */
+@Slf4j
+public class DatasetCatalog {
+
+    private static final byte[] COUNTER_KEY = {0, 0, 0, 0, 0};
+    private static final byte[] NAMES_FROM = {0, 0, 0, 0, 1};
+    private static final byte[] NAMES_TO = {0, 0, 0, 0, 2};
+
+    private final KVRepository<byte[], byte[]> repository;
+    private final Map<String, Dataset> datasets = new ConcurrentHashMap<>();
+
+    public DatasetCatalog(final KVRepository<byte[], byte[]> repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Returns the dataset with the given name, registering it uncompressed on first use.
+     */
+    public Dataset getOrCreate(final String name) {
+        return getOrCreate(name, CompressionUtil.CodecType.NO_COMPRESSION);
+    }
+
+    /**
+     * Returns the dataset with the given name, registering it with a new id and the segment layout on first use.
+     * The codec of an existing dataset is kept.
+     */
+    public Dataset getOrCreate(final String name, final CompressionUtil.CodecType codec) {
+        return getOrCreate(name, codec, Dataset.Layout.SEGMENTS);
+    }
+
+    /**
+     * Returns the dataset with the given name, registering it with a new id on first use. The codec and layout of
+     * an existing dataset are kept.
+     */
+    public Dataset getOrCreate(final String name, final CompressionUtil.CodecType codec, final Dataset.Layout layout) {
+        return datasets.computeIfAbsent(name, n -> register(n, codec, layout));
+    }
+
+    /**
+     * Lists all registered datasets in name order.
+     */
+    public List<Dataset> list() {
+        final List<Dataset> result = new ArrayList<>();
+        try (KVCursor<byte[], byte[]> cursor = repository.scan(NAMES_FROM, NAMES_TO)) {
+            while (cursor.next()) {
+                final byte[] key = cursor.key();
+                final String name = new String(key, NAMES_FROM.length, key.length - NAMES_FROM.length,
+                        StandardCharsets.UTF_8);
+                result.add(dataset(name, cursor.value()));
+            }
+        }
+        return result;
+    }
+
+    private Dataset register(final String name, final CompressionUtil.CodecType codec, final Dataset.Layout layout) {
+        final byte[] nameKey = nameKey(name);
+        final byte[] entry = repository.update(nameKey, entryOpt -> entryOpt.orElseGet(() -> ByteBuffer.allocate(6)
+                        .putInt(nextId())
+                        .put(codec.getType())
+                        .put((byte) layout.ordinal())
+                        .array()))
+                .orElseThrow(() -> new IllegalStateException("Can't register dataset " + name));
+        final Dataset dataset = dataset(name, entry);
+        log.debug("dataset '{}' has id {}, codec {} and layout {}", name, dataset.id(), dataset.codec(),
+                dataset.layout());
+        return dataset;
+    }
+
+    private static Dataset dataset(final String name, final byte[] entry) {
+        final ByteBuffer wrapped = ByteBuffer.wrap(entry);
+        final int id = wrapped.getInt();
+        // entries written before codecs were introduced have no codec byte
+        final CompressionUtil.CodecType codec = wrapped.hasRemaining()
+                ? CompressionUtil.CodecType.fromCompressionType(wrapped.get())
+                : CompressionUtil.CodecType.NO_COMPRESSION;
+        // and entries written before layouts were introduced are segments
+        final Dataset.Layout layout = wrapped.hasRemaining()
+                ? Dataset.Layout.values()[wrapped.get()]
+                : Dataset.Layout.SEGMENTS;
+        return new Dataset(name, id, codec, layout);
+    }
+
+    private int nextId() {
+        final byte[] counter = repository.update(COUNTER_KEY, counterOpt -> {
+                    final int last = counterOpt.map(c -> ByteBuffer.wrap(c).getInt()).orElse(0);
+                    return ByteBuffer.allocate(4).putInt(last + 1).array();
+                })
+                .orElseThrow(() -> new IllegalStateException("Can't allocate dataset id"));
+        return ByteBuffer.wrap(counter).getInt();
+    }
+
+    private static byte[] nameKey(final String name) {
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        final byte[] key = Arrays.copyOf(NAMES_FROM, NAMES_FROM.length + nameBytes.length);
+        System.arraycopy(nameBytes, 0, key, NAMES_FROM.length, nameBytes.length);
+        return key;
+    }
+}
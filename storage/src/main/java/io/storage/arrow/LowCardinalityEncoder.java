@@ -0,0 +1,236 @@
+package io.storage.arrow;
+
+import okio.ByteString;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dictionary-encodes the low-cardinality Utf8 columns of batches, top-level columns as well as struct children.
+ * The columns are chosen once from a sample batch. The dictionaries only grow, so an index stays valid for every
+ * later batch and a stream writer only has to re-send a dictionary when a new value shows up. A dictionary never grows
+ * past {@value #MAX_DICTIONARY_SIZE} values: a batch which would overflow it fails to encode, and the column is listed
+ * by {@link #getOverflowed()} so that the stream can be written again with it left plain.
+ */
+public class LowCardinalityEncoder implements AutoCloseable {
+
+    // a column is encoded when it has at most this many distinct values ...
+    private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+    // ... and every value repeats at least this often on average
+    private static final int MIN_REPETITION = 4;
+    private static final ArrowType.Int INDEX_TYPE = new ArrowType.Int(32, true);
+
+    private final BufferAllocator allocator;
+    private final Schema encodedSchema;
+    private final Map<String, ColumnDictionary> columns = new HashMap<>();
+    private final Set<String> plain;
+    private final Set<String> overflowed = new HashSet<>();
+    private final DictionaryProvider.MapDictionaryProvider dictionaries = new DictionaryProvider.MapDictionaryProvider();
+
+    /**
+     * @param allocator allocator of the dictionaries and of the encoded vectors
+     * @param sample    batch to estimate the cardinality of the columns from
+     */
+    public LowCardinalityEncoder(final BufferAllocator allocator, final VectorSchemaRoot sample) {
+        this(allocator, sample, Set.of());
+    }
+
+    /**
+     * @param plain paths of the columns never encoded, struct children are named {@code parent.child}
+     * @see #LowCardinalityEncoder(BufferAllocator, VectorSchemaRoot)
+     */
+    public LowCardinalityEncoder(final BufferAllocator allocator, final VectorSchemaRoot sample,
+                                 final Set<String> plain) {
+        this.allocator = allocator;
+        this.plain = plain;
+        final List<Field> fields = new ArrayList<>();
+        for (FieldVector vector : sample.getFieldVectors()) {
+            fields.add(encodedField(vector, vector.getField().getName(), sample.getRowCount()));
+        }
+        this.encodedSchema = new Schema(fields, sample.getSchema().getCustomMetadata());
+    }
+
+    /**
+     * Schema of the encoded batches, in memory format: encoded columns are integer indices.
+     */
+    public Schema getEncodedSchema() {
+        return encodedSchema;
+    }
+
+    public DictionaryProvider getDictionaries() {
+        return dictionaries;
+    }
+
+    /**
+     * Paths of the encoded columns which met more distinct values than a dictionary holds.
+     */
+    public Set<String> getOverflowed() {
+        return Set.copyOf(overflowed);
+    }
+
+    /**
+     * Encodes a batch of the sample schema. Columns which are not encoded are shared with {@code raw}, except struct
+     * children next to an encoded sibling, which are transferred out of {@code raw}.
+     *
+     * @throws IllegalStateException if a column has more distinct values than its dictionary holds
+     */
+    public EncodedBatch encode(final VectorSchemaRoot raw) {
+        final int rowCount = raw.getRowCount();
+        final List<FieldVector> vectors = new ArrayList<>();
+        final List<FieldVector> owned = new ArrayList<>();
+        try {
+            for (int i = 0; i < encodedSchema.getFields().size(); i++) {
+                final Field field = encodedSchema.getFields().get(i);
+                final FieldVector rawVector = raw.getVector(i);
+                if (field.equals(rawVector.getField())) {
+                    vectors.add(rawVector);
+                } else {
+                    final FieldVector encoded = field.createVector(allocator);
+                    owned.add(encoded);
+                    encodeInto(rawVector, encoded, field.getName(), rowCount);
+                    vectors.add(encoded);
+                }
+            }
+        } catch (RuntimeException e) {
+            // the vectors encoded so far, with the struct children transferred into them
+            owned.forEach(FieldVector::close);
+            throw e;
+        }
+        return new EncodedBatch(new VectorSchemaRoot(encodedSchema, vectors, rowCount), owned);
+    }
+
+    private Field encodedField(final FieldVector vector, final String path, final int rowCount) {
+        final Field field = vector.getField();
+        if (field.getType() instanceof ArrowType.Utf8 && !plain.contains(path)
+                && isLowCardinality((VarCharVector) vector, rowCount)) {
+            final DictionaryEncoding encoding = new DictionaryEncoding(columns.size(), false, INDEX_TYPE);
+            final VarCharVector dictionary = new VarCharVector(path, allocator);
+            dictionary.allocateNew();
+            columns.put(path, new ColumnDictionary(dictionary));
+            dictionaries.put(new Dictionary(dictionary, encoding));
+            return new Field(field.getName(),
+                    new FieldType(field.isNullable(), INDEX_TYPE, encoding, field.getMetadata()), null);
+        }
+        if (field.getType() instanceof ArrowType.Struct) {
+            final List<Field> children = new ArrayList<>();
+            for (FieldVector child : vector.getChildrenFromFields()) {
+                children.add(encodedField(child, path + "." + child.getField().getName(), rowCount));
+            }
+            return new Field(field.getName(), field.getFieldType(), children);
+        }
+        return field;
+    }
+
+    private static boolean isLowCardinality(final VarCharVector vector, final int rowCount) {
+        if (rowCount == 0) {
+            return false;
+        }
+        final Set<ByteString> distinct = new HashSet<>();
+        for (int i = 0; i < rowCount; i++) {
+            if (!vector.isNull(i)) {
+                distinct.add(ByteString.of(vector.get(i)));
+                if (distinct.size() > MAX_DICTIONARY_SIZE || distinct.size() * MIN_REPETITION > rowCount) {
+                    return false;
+                }
+            }
+        }
+        return !distinct.isEmpty();
+    }
+
+    private void encodeInto(final FieldVector raw, final FieldVector target, final String path, final int rowCount) {
+        if (target.getField().getDictionary() != null) {
+            final VarCharVector values = (VarCharVector) raw;
+            final IntVector indices = (IntVector) target;
+            final ColumnDictionary dictionary = columns.get(path);
+            indices.allocateNew(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                if (values.isNull(i)) {
+                    indices.setNull(i);
+                } else {
+                    final int index = dictionary.indexOf(values.get(i));
+                    if (index < 0) {
+                        overflowed.add(path);
+                        throw new IllegalStateException(path + " has more than " + MAX_DICTIONARY_SIZE + " values");
+                    }
+                    indices.set(i, index);
+                }
+            }
+            indices.setValueCount(rowCount);
+        } else {
+            final StructVector rawStruct = (StructVector) raw;
+            final StructVector targetStruct = (StructVector) target;
+            targetStruct.allocateNew();
+            final List<FieldVector> rawChildren = rawStruct.getChildrenFromFields();
+            final List<FieldVector> targetChildren = targetStruct.getChildrenFromFields();
+            for (int i = 0; i < rawChildren.size(); i++) {
+                final FieldVector rawChild = rawChildren.get(i);
+                final FieldVector targetChild = targetChildren.get(i);
+                if (targetChild.getField().equals(rawChild.getField())) {
+                    rawChild.makeTransferPair(targetChild).transfer();
+                } else {
+                    encodeInto(rawChild, targetChild, path + "." + targetChild.getField().getName(), rowCount);
+                }
+            }
+            ColumnLayout.copyValidity(rawStruct, targetStruct, rowCount);
+        }
+    }
+
+    @Override
+    public void close() {
+        columns.values().forEach(column -> column.values().close());
+        columns.clear();
+    }
+
+    /**
+     * Encoded batch; closing it releases the vectors created by the encoding, not the shared ones.
+     */
+    public record EncodedBatch(VectorSchemaRoot root, List<FieldVector> owned) implements AutoCloseable {
+        @Override
+        public void close() {
+            owned.forEach(FieldVector::close);
+        }
+    }
+
+    private record ColumnDictionary(VarCharVector values, Map<ByteString, Integer> indices) {
+
+        ColumnDictionary(VarCharVector values) {
+            this(values, new HashMap<>());
+        }
+
+        /**
+         * @return index of the value, added if missing, or -1 when the dictionary is full
+         */
+        int indexOf(byte[] value) {
+            final ByteString key = ByteString.of(value);
+            final Integer existing = indices.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            final int index = values.getValueCount();
+            if (index >= MAX_DICTIONARY_SIZE) {
+                return -1;
+            }
+            values.setSafe(index, value);
+            values.setValueCount(index + 1);
+            indices.put(key, index);
+            return index;
+        }
+    }
+}
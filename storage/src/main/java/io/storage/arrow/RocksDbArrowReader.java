@@ -1,61 +1,155 @@
 package io.storage.arrow;
 
+import io.storage.rocks.KVCursor;
 import io.storage.rocks.KVRepository;
+import org.apache.arrow.compression.CommonsCompressionFactory;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.ipc.ArrowStreamReader;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
 
 public class RocksDbArrowReader extends ArrowStreamReader {
 
+    private final Dataset dataset;
 
     public RocksDbArrowReader(final KVRepository<byte[], byte[]> repository,
+                              final Dataset dataset,
                               final BufferAllocator allocator
     ) {
-        super(new RocksDbReadableByteChannel(repository), allocator);
+        this(repository, dataset, allocator, stats -> true);
+    }
+
+    /**
+     * @param filter tells from the {@link BatchStats} of a batch whether it may hold matching rows, batches rejected
+     *               by it are dropped from the stream before they are decoded
+     */
+    public RocksDbArrowReader(final KVRepository<byte[], byte[]> repository,
+                              final Dataset dataset,
+                              final BufferAllocator allocator,
+                              final Predicate<BatchStats> filter
+    ) {
+        super(new RocksDbReadableByteChannel(repository, dataset, skippedRanges(repository, dataset, filter)),
+                allocator, CommonsCompressionFactory.INSTANCE);
+        this.dataset = dataset;
+    }
+
+    @Override
+    public boolean loadNextBatch() throws IOException {
+        final boolean loaded = super.loadNextBatch();
+        if (loaded) {
+            ArrowMetrics.batchRead(dataset, getVectorSchemaRoot().getRowCount());
+        }
+        return loaded;
+    }
+
+    /**
+     * @return byte ranges of the record batches rejected by the filter, sorted by offset
+     */
+    private static List<long[]> skippedRanges(KVRepository<byte[], byte[]> repository,
+                                              Dataset dataset,
+                                              Predicate<BatchStats> filter) {
+        final List<long[]> ranges = new ArrayList<>();
+        try (KVCursor<byte[], byte[]> cursor = repository.scan(dataset.statsFrom(), dataset.statsTo())) {
+            while (cursor.next()) {
+                final BatchStats stats = BatchStats.fromBytes(cursor.value());
+                if (stats.streamOffset() >= 0 && !filter.test(stats)) {
+                    ranges.add(new long[]{stats.streamOffset(), stats.streamOffset() + stats.streamLength()});
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read batch statistics of " + dataset.name(), e);
+        }
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        return ranges;
     }
 
     private static class RocksDbReadableByteChannel implements ReadableByteChannel {
-        private final AtomicInteger ai = new AtomicInteger(0);
-        private final KVRepository<byte[], byte[]> repository;
+        private final KVCursor<byte[], byte[]> cursor;
+        private final List<long[]> skipped;
         private byte[] head;
         private int readingLimit = 0;
         private int readingPos = 0;
+        // stream offset of head[readingPos]
+        private long position = 0;
+        private int segmentSize = -1;
+        private int nextSkipped = 0;
 
-        public RocksDbReadableByteChannel(KVRepository<byte[], byte[]> repository) {
-            this.repository = repository;
-            this.head = repository.find(intToBytes(ai.getAndIncrement())).orElse(null);
+        public RocksDbReadableByteChannel(KVRepository<byte[], byte[]> repository,
+                                          Dataset dataset,
+                                          List<long[]> skipped) {
+            this.cursor = repository.scan(dataset.segmentsFrom(), dataset.segmentsTo());
+            this.skipped = skipped;
+            advance(cursor.next());
+        }
+
+        /**
+         * Makes the current cursor entry the head segment.
+         *
+         * @param valid result of the last cursor move, false when the stream is exhausted
+         */
+        private void advance(boolean valid) {
+            this.head = valid ? cursor.value() : null;
             if (this.head != null) {
                 this.readingLimit = this.head.length;
                 this.readingPos = 0;
+                if (segmentSize < 0) {
+                    segmentSize = this.head.length;
+                }
             }
         }
 
-        private byte[] intToBytes(final int i) {
-            ByteBuffer bb = ByteBuffer.allocate(4);
-            bb.putInt(i);
-            return bb.array();
+        /**
+         * Drops the skipped range starting at the current position. Segments entirely inside the range are stepped
+         * over without reading their value; every segment but the last one has the size of the first one.
+         */
+        private void skip() {
+            while (head != null && nextSkipped < skipped.size() && position >= skipped.get(nextSkipped)[0]) {
+                long remaining = skipped.get(nextSkipped)[1] - position;
+                final int inHead = (int) Math.min(remaining, readingLimit - readingPos);
+                readingPos += inHead;
+                position += inHead;
+                remaining -= inHead;
+                if (readingPos == readingLimit) {
+                    boolean valid = cursor.next();
+                    while (valid && remaining >= segmentSize) {
+                        position += segmentSize;
+                        remaining -= segmentSize;
+                        valid = cursor.next();
+                    }
+                    advance(valid);
+                }
+                if (remaining <= 0) {
+                    nextSkipped++;
+                }
+            }
         }
 
         @Override
         public int read(ByteBuffer dst) {
+            skip();
             if (this.head == null) {
                 return -1;
             } else {
                 int remaining = dst.remaining();
                 int current = readingLimit - readingPos;
                 int toCopy = Math.min(remaining, current);
+                if (nextSkipped < skipped.size()) {
+                    // stop at the next skipped range
+                    toCopy = (int) Math.min(toCopy, skipped.get(nextSkipped)[0] - position);
+                }
                 dst.put(this.head, readingPos, toCopy);
                 this.readingPos += toCopy;
+                this.position += toCopy;
 
                 if (readingPos == readingLimit) {
-                    this.head = repository.find(intToBytes(ai.getAndIncrement())).orElse(null);
-                    if (this.head != null) {
-                        this.readingLimit = this.head.length;
-                        this.readingPos = 0;
-                    }
+                    advance(cursor.next());
                 }
                 return toCopy;
             }
@@ -69,7 +163,7 @@ public class RocksDbArrowReader extends ArrowStreamReader {
 
         @Override
         public void close() {
-
+            cursor.close();
         }
     }
 }
@@ -1,53 +1,168 @@
 package io.storage.arrow;
 
+import io.storage.rocks.KVCursor;
 import io.storage.rocks.KVRepository;
+import org.apache.arrow.compression.CommonsCompressionFactory;
 import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.dictionary.DictionaryProvider;
 import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.ArrowBlock;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.IpcOption;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
-import java.util.concurrent.atomic.AtomicInteger;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes one arrow stream into a dataset. The stream is cut into fixed-size segments regardless of the IPC message
+ * boundaries, so a reader only has to concatenate the segments in key order.
+ * Batches written with {@link #writeBatch(BatchStats)} get a {@link BatchStats} sidecar holding the byte range of their
+ * record batch message, which lets a reader drop the batch from the stream.
+ * A stream replaces the previous one of the dataset: its segments and statistics are deleted before the first write,
+ * otherwise statistics of a longer previous stream would point into the new one.
+ */
 public class RocksDbArrowWriter extends ArrowStreamWriter {
 
+    public static final int DEFAULT_SEGMENT_SIZE = 4 << 20;
+
+    private final Dataset dataset;
+    private final RocksDbWritableByteChannel channel;
+    private ArrowBlock lastBlock;
+    private int batchIndex = 0;
+
     public RocksDbArrowWriter(KVRepository<byte[], byte[]> repository,
+                              Dataset dataset,
                               VectorSchemaRoot root,
                               DictionaryProvider provider) {
+        this(repository, dataset, root, provider, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public RocksDbArrowWriter(KVRepository<byte[], byte[]> repository,
+                              Dataset dataset,
+                              VectorSchemaRoot root,
+                              DictionaryProvider provider,
+                              int segmentSize) {
+        this(dataset, root, provider, new RocksDbWritableByteChannel(repository, dataset, segmentSize));
+    }
 
-        super(root, provider, new RocksDbWritableByteChannel(repository));
+    private RocksDbArrowWriter(Dataset dataset,
+                               VectorSchemaRoot root,
+                               DictionaryProvider provider,
+                               RocksDbWritableByteChannel channel) {
+        super(root, provider, channel, IpcOption.DEFAULT, CommonsCompressionFactory.INSTANCE, dataset.codec());
+        this.dataset = dataset;
+        this.channel = channel;
+    }
+
+    /**
+     * Writes the batch of the root and stores its statistics with the next segments.
+     *
+     * @param stats statistics of the batch, computed before dictionary encoding
+     */
+    public void writeBatch(BatchStats stats) throws IOException {
+        writeBatch();
+        final long length = lastBlock.getMetadataLength() + lastBlock.getBodyLength();
+        channel.stage(dataset.statsKey(batchIndex++),
+                new BatchStats(stats.rowCount(), lastBlock.getOffset(), length, stats.columns()).toBytes());
+        ArrowMetrics.batchWritten(dataset, stats.rowCount(), length);
+    }
+
+    @Override
+    protected ArrowBlock writeRecordBatch(ArrowRecordBatch batch) throws IOException {
+        lastBlock = super.writeRecordBatch(batch);
+        return lastBlock;
     }
 
     private static class RocksDbWritableByteChannel implements WritableByteChannel {
 
-        private final AtomicInteger ai = new AtomicInteger(0);
-        private final KVRepository<byte[], byte[]> repository;
+        // how many full segments are buffered before they are written with one batch
+        private static final int FLUSH_SIZE = 4;
 
-        public RocksDbWritableByteChannel(KVRepository<byte[], byte[]> repository) {
+        private final KVRepository<byte[], byte[]> repository;
+        private final Dataset dataset;
+        private final int segmentSize;
+        private final Map<byte[], byte[]> pending = new LinkedHashMap<>();
+        private int segmentId = 0;
+        private boolean cleared = false;
+        private byte[] segment;
+        private int position = 0;
+
+        public RocksDbWritableByteChannel(KVRepository<byte[], byte[]> repository, Dataset dataset, int segmentSize) {
             this.repository = repository;
-        }
-
-        private byte[] intToBytes(final int i) {
-            ByteBuffer bb = ByteBuffer.allocate(4);
-            bb.putInt(i);
-            return bb.array();
+            this.dataset = dataset;
+            this.segmentSize = segmentSize;
+            this.segment = new byte[segmentSize];
         }
 
         @Override
-        public int write(ByteBuffer source) {
-
-            final byte[] key = intToBytes(ai.getAndIncrement());
+        public int write(ByteBuffer source) throws IOException {
             final int length = source.remaining();
-            final byte[] value = new byte[length];
+            while (source.hasRemaining()) {
+                final int toCopy = Math.min(source.remaining(), segmentSize - position);
+                source.get(segment, position, toCopy);
+                position += toCopy;
+
+                if (position == segmentSize) {
+                    pending.put(dataset.segmentKey(segmentId++), segment);
+                    segment = new byte[segmentSize];
+                    position = 0;
+                    if (pending.size() >= FLUSH_SIZE) {
+                        flush();
+                    }
+                }
+            }
+            return length;
+        }
 
-            source.get(value, 0, length);
+        /**
+         * Adds an entry to the next batched write of segments.
+         */
+        void stage(byte[] key, byte[] value) {
+            pending.put(key, value);
+        }
+
+        /**
+         * Persists the completed segments with one batched write.
+         */
+        private void flush() throws IOException {
+            if (!cleared) {
+                clear();
+                cleared = true;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            final boolean save = repository.saveAll(pending);
+            pending.clear();
+            if (!save) {
+                throw new IOException("Can't save arrow stream segments");
+            }
+        }
 
-            final boolean save = repository.save(key, value);
+        /**
+         * Deletes the segments and statistics of the previous stream of the dataset.
+         */
+        private void clear() throws IOException {
+            final List<byte[]> keys = new ArrayList<>();
+            collectKeys(dataset.segmentsFrom(), dataset.segmentsTo(), keys);
+            collectKeys(dataset.statsFrom(), dataset.statsTo(), keys);
+            if (!keys.isEmpty() && !repository.deleteAll(keys)) {
+                throw new IOException("Can't delete the previous stream of " + dataset.name());
+            }
+        }
 
-            if (save) {
-                return value.length;
+        private void collectKeys(byte[] from, byte[] to, List<byte[]> keys) {
+            try (KVCursor<byte[], byte[]> cursor = repository.scan(from, to)) {
+                while (cursor.next()) {
+                    keys.add(cursor.key());
+                }
             }
-            return 0;
         }
 
         @Override
@@ -56,8 +171,12 @@ public class RocksDbArrowWriter extends ArrowStreamWriter {
         }
 
         @Override
-        public void close() {
-
+        public void close() throws IOException {
+            if (position > 0) {
+                pending.put(dataset.segmentKey(segmentId++), Arrays.copyOf(segment, position));
+                position = 0;
+            }
+            flush();
         }
     }
 }
@@ -0,0 +1,168 @@
+package io.storage.arrow;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.flatbuf.Message;
+import org.apache.arrow.flatbuf.MessageHeader;
+import org.apache.arrow.flatbuf.RecordBatch;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.message.ArrowDictionaryBatch;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.DictionaryUtility;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads an arrow IPC stream held in one off-heap buffer. Unlike {@link org.apache.arrow.vector.ipc.ArrowStreamReader}
+ * the record batch bodies are not copied: the vectors are loaded over slices of the segment buffer. Compressed bodies
+ * are decompressed into new buffers. Dictionary batches are loaded into the dictionaries of the segment, record
+ * batches of dictionary-encoded columns then hold the indices.
+ */
+public class SegmentReader implements AutoCloseable {
+
+    private final ArrowBuf segment;
+    private final long length;
+    private final VectorSchemaRoot root;
+    private final VectorLoader loader;
+    private final Map<Long, Dictionary> dictionaries = new HashMap<>();
+    private final DictionaryProvider.MapDictionaryProvider provider = new DictionaryProvider.MapDictionaryProvider();
+    private long offset = 0;
+
+    /**
+     * @param segment   buffer holding a whole IPC stream in {@code [0, writerIndex)}, owned by the reader afterwards,
+     *                  even when the constructor throws
+     * @param allocator allocator of the vectors, must be the allocator of the segment to avoid copies
+     */
+    public SegmentReader(final ArrowBuf segment, final BufferAllocator allocator) throws IOException {
+        this.segment = segment;
+        this.length = segment.writerIndex();
+
+        try {
+            final Message schemaMessage = nextMessage();
+            if (schemaMessage == null || schemaMessage.headerType() != MessageHeader.Schema) {
+                throw new IOException("Segment does not start with a schema");
+            }
+            final Schema schema = MessageSerializer.deserializeSchema(schemaMessage);
+            final List<Field> fields = new ArrayList<>();
+            for (Field field : schema.getFields()) {
+                // encoded columns become index vectors, their dictionaries are created empty
+                fields.add(DictionaryUtility.toMemoryFormat(field, allocator, dictionaries));
+            }
+            dictionaries.values().forEach(provider::put);
+            this.root = VectorSchemaRoot.create(new Schema(fields, schema.getCustomMetadata()), allocator);
+        } catch (IOException | RuntimeException e) {
+            dictionaries.values().forEach(dictionary -> dictionary.getVector().close());
+            segment.close();
+            throw e;
+        }
+        this.loader = new VectorLoader(root, CommonsCompressionFactory.INSTANCE);
+    }
+
+    public VectorSchemaRoot getVectorSchemaRoot() {
+        return root;
+    }
+
+    /**
+     * Dictionaries of the encoded columns, up to date with the last loaded batch.
+     */
+    public DictionaryProvider getDictionaries() {
+        return provider;
+    }
+
+    /**
+     * Adds the dictionaries of the segment to {@code target}; they stay owned by this reader.
+     */
+    void exportDictionaries(DictionaryProvider.MapDictionaryProvider target) {
+        dictionaries.values().forEach(target::put);
+    }
+
+    /**
+     * Loads the next record batch into the root.
+     *
+     * @return false at the end of the stream
+     */
+    public boolean loadNextBatch() throws IOException {
+        Message message = nextMessage();
+        while (message != null && message.headerType() != MessageHeader.RecordBatch) {
+            if (message.headerType() == MessageHeader.DictionaryBatch) {
+                loadDictionary(message);
+            } else {
+                offset += message.bodyLength();
+            }
+            message = nextMessage();
+        }
+        if (message == null) {
+            return false;
+        }
+
+        final ArrowBuf body = segment.slice(offset, message.bodyLength());
+        offset += message.bodyLength();
+        // deserializeRecordBatch releases the body once it is sliced into the batch buffers
+        body.getReferenceManager().retain();
+        try (ArrowRecordBatch batch = MessageSerializer.deserializeRecordBatch(
+                (RecordBatch) message.header(new RecordBatch()), body)) {
+            loader.load(batch);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the content of a dictionary, the writers never send deltas.
+     */
+    private void loadDictionary(Message message) throws IOException {
+        final ArrowBuf body = segment.slice(offset, message.bodyLength());
+        offset += message.bodyLength();
+        body.getReferenceManager().retain();
+        try (ArrowDictionaryBatch batch = MessageSerializer.deserializeDictionaryBatch(message, body)) {
+            final Dictionary dictionary = dictionaries.get(batch.getDictionaryId());
+            if (dictionary == null) {
+                throw new IOException("Unknown dictionary " + batch.getDictionaryId());
+            }
+            final FieldVector vector = dictionary.getVector();
+            final VectorSchemaRoot dictionaryRoot = new VectorSchemaRoot(List.of(vector.getField()), List.of(vector), 0);
+            new VectorLoader(dictionaryRoot, CommonsCompressionFactory.INSTANCE).load(batch.getDictionary());
+        }
+    }
+
+    /**
+     * Reads the next message metadata, positioning {@link #offset} at its body.
+     *
+     * @return the message, or null at the end of the stream
+     */
+    private Message nextMessage() {
+        if (offset + 4 > length) {
+            return null;
+        }
+        int metadataLength = segment.getInt(offset);
+        offset += 4;
+        if (metadataLength == MessageSerializer.IPC_CONTINUATION_TOKEN) {
+            metadataLength = segment.getInt(offset);
+            offset += 4;
+        }
+        if (metadataLength == 0) {
+            return null;
+        }
+        final Message message = Message.getRootAsMessage(segment.nioBuffer(offset, metadataLength));
+        offset += metadataLength;
+        return message;
+    }
+
+    @Override
+    public void close() {
+        root.close();
+        dictionaries.values().forEach(dictionary -> dictionary.getVector().close());
+        segment.close();
+    }
+}
@@ -0,0 +1,110 @@
+package io.storage.arrow;
+
+import okio.ByteString;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.BaseVariableWidthVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+
+/**
+ * Read access to a Utf8 column which may be dictionary-encoded. On an encoded column a predicate is evaluated once per
+ * dictionary value and rows are matched by their index, and group-bys can key on {@link #id(int)}. Predicates read
+ * the values in place, {@link #value(int)} copies them.
+ */
+public final class Utf8Column {
+
+    private final VarCharVector values;
+    private final BaseIntVector indices;
+
+    private Utf8Column(VarCharVector values, BaseIntVector indices) {
+        this.values = values;
+        this.indices = indices;
+    }
+
+    /**
+     * @param vector       a {@link VarCharVector}, or the index vector of a dictionary-encoded Utf8 column
+     * @param dictionaries dictionaries of the batch holding {@code vector}
+     */
+    public static Utf8Column of(FieldVector vector, DictionaryProvider dictionaries) {
+        final DictionaryEncoding encoding = vector.getField().getDictionary();
+        if (encoding == null) {
+            return new Utf8Column((VarCharVector) vector, null);
+        }
+        final Dictionary dictionary = dictionaries.lookup(encoding.getId());
+        if (dictionary == null) {
+            throw new IllegalStateException("Missing dictionary " + encoding.getId() + " of " + vector.getName());
+        }
+        return new Utf8Column((VarCharVector) dictionary.getVector(), (BaseIntVector) vector);
+    }
+
+    public boolean isEncoded() {
+        return indices != null;
+    }
+
+    public boolean isNull(int row) {
+        return indices != null ? indices.isNull(row) : values.isNull(row);
+    }
+
+    public ByteString value(int row) {
+        return ByteString.of(values.get(indices != null ? id(row) : row));
+    }
+
+    /**
+     * Tests the value of a non-null row without copying it.
+     */
+    public boolean matches(int row, Utf8Predicate predicate) {
+        return test(indices != null ? id(row) : row, predicate);
+    }
+
+    /**
+     * Dictionary index of the row, only for encoded columns.
+     */
+    public int id(int row) {
+        return (int) indices.getValueAsLong(row);
+    }
+
+    /**
+     * Number of dictionary values, only for encoded columns.
+     */
+    public int dictionarySize() {
+        return values.getValueCount();
+    }
+
+    /**
+     * Dictionary value of an index, only for encoded columns.
+     */
+    public ByteString dictionaryValue(int id) {
+        return ByteString.of(values.get(id));
+    }
+
+    /**
+     * Tests a non-null dictionary value without copying it, only for encoded columns.
+     */
+    public boolean dictionaryMatches(int id, Utf8Predicate predicate) {
+        return test(id, predicate);
+    }
+
+    /**
+     * Evaluates the predicate once per dictionary value, only for encoded columns.
+     *
+     * @return whether the value of each dictionary index matches
+     */
+    public boolean[] matchingIds(Utf8Predicate predicate) {
+        final boolean[] matching = new boolean[dictionarySize()];
+        for (int id = 0; id < matching.length; id++) {
+            matching[id] = !values.isNull(id) && test(id, predicate);
+        }
+        return matching;
+    }
+
+    private boolean test(int index, Utf8Predicate predicate) {
+        final ArrowBuf offsets = values.getOffsetBuffer();
+        final int start = offsets.getInt((long) index * BaseVariableWidthVector.OFFSET_WIDTH);
+        final int end = offsets.getInt((long) (index + 1) * BaseVariableWidthVector.OFFSET_WIDTH);
+        return predicate.test(values.getDataBuffer(), start, end - start);
+    }
+}
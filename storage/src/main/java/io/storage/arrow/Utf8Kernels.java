@@ -0,0 +1,105 @@
+package io.storage.arrow;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import org.apache.arrow.memory.ArrowBuf;
+
+import java.util.List;
+
+/**
+ * Byte comparisons of Utf8 values with constants, reading the data buffer in place: testing a row allocates nothing,
+ * unlike {@code VarCharVector.get} which copies every value into a new array.
+ */
+public final class Utf8Kernels {
+
+    private Utf8Kernels() {
+    }
+
+    public static Utf8Predicate equalTo(byte[] operand) {
+        return (data, start, length) -> length == operand.length && regionEquals(data, start, operand);
+    }
+
+    public static Utf8Predicate startsWith(byte[] prefix) {
+        return (data, start, length) -> length >= prefix.length && regionEquals(data, start, prefix);
+    }
+
+    public static Utf8Predicate endsWith(byte[] suffix) {
+        return (data, start, length) ->
+                length >= suffix.length && regionEquals(data, start + length - suffix.length, suffix);
+    }
+
+    public static Utf8Predicate contains(byte[] infix) {
+        return (data, start, length) -> {
+            for (long from = start; from <= start + length - infix.length; from++) {
+                if (regionEquals(data, from, infix)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Hash lookup of the value among the operands, the value is hashed in place.
+     */
+    public static Utf8Predicate in(List<byte[]> operands) {
+        return new InSet(operands);
+    }
+
+    private static boolean regionEquals(ArrowBuf data, long start, byte[] operand) {
+        for (int i = 0; i < operand.length; i++) {
+            if (data.getByte(start + i) != operand[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open addressing table of the operands, a slot holds an operand index plus one.
+     */
+    private static final class InSet implements Utf8Predicate {
+
+        private final byte[][] operands;
+        private final int[] slots;
+        private final int mask;
+
+        InSet(List<byte[]> operands) {
+            this.operands = operands.toArray(new byte[0][]);
+            this.slots = new int[HashCommon.arraySize(Math.max(1, operands.size()), 0.5f)];
+            this.mask = slots.length - 1;
+            for (int i = 0; i < this.operands.length; i++) {
+                final byte[] operand = this.operands[i];
+                int slot = hash(operand) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = i + 1;
+            }
+        }
+
+        @Override
+        public boolean test(ArrowBuf data, long start, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + data.getByte(start + i);
+            }
+            int slot = HashCommon.mix(hash) & mask;
+            while (slots[slot] != 0) {
+                final byte[] operand = operands[slots[slot] - 1];
+                if (operand.length == length && regionEquals(data, start, operand)) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        private static int hash(byte[] operand) {
+            int hash = 0;
+            for (byte b : operand) {
+                hash = 31 * hash + b;
+            }
+            return HashCommon.mix(hash);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.storage.arrow;
+
+import org.apache.arrow.memory.ArrowBuf;
+
+/**
+ * Test of a Utf8 value read in place from the data buffer of its vector, see {@link Utf8Kernels}.
+ */
+@FunctionalInterface
+public interface Utf8Predicate {
+
+    /**
+     * @param data   data buffer of the vector
+     * @param start  offset of the value in {@code data}
+     * @param length length of the value in bytes
+     */
+    boolean test(ArrowBuf data, long start, int length);
+}
@@ -0,0 +1,66 @@
+package io.storage.arrow;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Bounded pool of roots of one schema. Released roots are reset rather than cleared, so their buffers keep the
+ * capacity reached by earlier batches and the next batch writes without reallocating.
+ */
+public class VectorSchemaRootPool implements AutoCloseable {
+
+    private final Schema schema;
+    private final BufferAllocator allocator;
+    private final int capacity;
+    private final BlockingQueue<VectorSchemaRoot> idle = new LinkedBlockingQueue<>();
+    private final List<VectorSchemaRoot> created = new ArrayList<>();
+
+    public VectorSchemaRootPool(final Schema schema, final BufferAllocator allocator, final int capacity) {
+        this.schema = schema;
+        this.allocator = allocator;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns an empty root with allocated vectors, waiting for a release when all roots are borrowed.
+     */
+    public VectorSchemaRoot borrow() throws InterruptedException {
+        final VectorSchemaRoot root = idle.poll();
+        if (root != null) {
+            return root;
+        }
+        synchronized (created) {
+            if (created.size() < capacity) {
+                final VectorSchemaRoot newRoot = VectorSchemaRoot.create(schema, allocator);
+                newRoot.allocateNew();
+                created.add(newRoot);
+                return newRoot;
+            }
+        }
+        return idle.take();
+    }
+
+    public void release(final VectorSchemaRoot root) {
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.reset();
+        }
+        root.setRowCount(0);
+        idle.add(root);
+    }
+
+    @Override
+    public void close() {
+        synchronized (created) {
+            created.forEach(VectorSchemaRoot::close);
+            created.clear();
+        }
+        idle.clear();
+    }
+}
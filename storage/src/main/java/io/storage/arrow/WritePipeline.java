@@ -0,0 +1,243 @@
+package io.storage.arrow;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Three-stage write pipeline:
+ * <ol>
+ *     <li>worker threads vectorize chunks into pooled {@link VectorSchemaRoot}s, in any order</li>
+ *     <li>one serializer thread takes the roots back in submission order and serializes them</li>
+ *     <li>one committer thread persists the serialized chunks in submission order</li>
+ * </ol>
+ * Every stage hands over through a bounded queue, so a slow stage blocks {@link #submit(Object[])}.
+ * A root is taken from the pool before a chunk is taken from the queue, so the oldest chunk always has a root and the
+ * serializer can never wait on a chunk which waits on a root. A stage catches every {@link Throwable} of a chunk and
+ * still hands the chunk over, so the pipeline always drains.
+ *
+ * @param <T> type of the written values
+ * @param <S> serialized form of a chunk
+ */
+@Slf4j
+public class WritePipeline<T, S> implements AutoCloseable {
+
+    private static final long END = -1;
+
+    private final BufferAllocator allocator;
+    private final BatchWriter.Vectorizer<T> vectorizer;
+    private final Serializer<S> serializer;
+    private final Committer<S> committer;
+    private final int workers;
+
+    private final VectorSchemaRootPool roots;
+    private final BlockingQueue<Chunk<T>> chunks;
+    private final BlockingQueue<Vectorized> vectorized;
+    private final BlockingQueue<Serialized<S>> serialized;
+    private final ExecutorService workerPool;
+    private final ExecutorService stagePool = Executors.newFixedThreadPool(2);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private long sequence = 0;
+
+    /**
+     * @param allocator     parent of the allocator of the pooled roots
+     * @param workers       number of vectorizing threads
+     * @param queueCapacity capacity of every stage queue
+     */
+    public WritePipeline(final BufferAllocator allocator,
+                         final Schema schema,
+                         final BatchWriter.Vectorizer<T> vectorizer,
+                         final int workers,
+                         final int queueCapacity,
+                         final Serializer<S> serializer,
+                         final Committer<S> committer) {
+        this.allocator = allocator.newChildAllocator("write-pipeline", 0, Long.MAX_VALUE);
+        this.vectorizer = vectorizer;
+        this.serializer = serializer;
+        this.committer = committer;
+        this.workers = workers;
+        this.roots = new VectorSchemaRootPool(schema, this.allocator, workers + queueCapacity);
+        this.chunks = new ArrayBlockingQueue<>(queueCapacity);
+        this.vectorized = new ArrayBlockingQueue<>(queueCapacity);
+        this.serialized = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.workerPool = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::vectorizeLoop);
+        }
+        stagePool.execute(this::serializeLoop);
+        stagePool.execute(this::commitLoop);
+    }
+
+    /**
+     * Queues a chunk, blocking while the pipeline is full.
+     *
+     * @throws IOException if an earlier chunk failed
+     */
+    public synchronized void submit(T[] values) throws IOException {
+        throwIfFailed();
+        put(chunks, new Chunk<>(sequence++, values));
+    }
+
+    private void vectorizeLoop() {
+        try {
+            while (true) {
+                final VectorSchemaRoot root = roots.borrow();
+                final Chunk<T> chunk = chunks.take();
+                if (chunk.sequence() == END) {
+                    roots.release(root);
+                    return;
+                }
+                if (failure.get() == null) {
+                    try {
+                        final T[] values = chunk.values();
+                        for (int i = 0; i < values.length; i++) {
+                            vectorizer.vectorize(values[i], i, root);
+                        }
+                        root.setRowCount(values.length);
+                    } catch (Throwable e) {
+                        // an error too, the root must go on or close() waits for it forever
+                        fail(e);
+                    }
+                }
+                vectorized.put(new Vectorized(chunk.sequence(), root));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serializeLoop() {
+        // roots vectorized ahead of the next expected chunk
+        final Map<Long, VectorSchemaRoot> reordered = new TreeMap<>();
+        long next = 0;
+        try {
+            while (true) {
+                final Vectorized item = vectorized.take();
+                if (item.sequence() == END) {
+                    serialized.put(new Serialized<>(END, null));
+                    return;
+                }
+                reordered.put(item.sequence(), item.root());
+
+                VectorSchemaRoot root;
+                while ((root = reordered.remove(next)) != null) {
+                    S value = null;
+                    if (failure.get() == null) {
+                        try {
+                            value = serializer.serialize(root);
+                        } catch (Throwable e) {
+                            fail(e);
+                        }
+                    }
+                    roots.release(root);
+                    serialized.put(new Serialized<>(next, value));
+                    next++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commitLoop() {
+        try {
+            while (true) {
+                final Serialized<S> item = serialized.take();
+                if (item.sequence() == END) {
+                    return;
+                }
+                if (failure.get() == null) {
+                    try {
+                        committer.commit(item.value());
+                    } catch (Throwable e) {
+                        fail(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            log.error("Write pipeline failed, remaining chunks are dropped", e);
+        }
+    }
+
+    private void throwIfFailed() throws IOException {
+        final Throwable e = failure.get();
+        if (e != null) {
+            throw new IOException("Write pipeline failed", e);
+        }
+    }
+
+    private static <E> void put(BlockingQueue<E> queue, E element) throws InterruptedIOException {
+        try {
+            queue.put(element);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing a chunk");
+        }
+    }
+
+    /**
+     * Waits until every submitted chunk is committed.
+     *
+     * @throws IOException if any chunk failed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            for (int i = 0; i < workers; i++) {
+                chunks.put(new Chunk<>(END, null));
+            }
+            workerPool.shutdown();
+            workerPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            vectorized.put(new Vectorized(END, null));
+            stagePool.shutdown();
+            stagePool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workerPool.shutdownNow();
+            stagePool.shutdownNow();
+            throw new InterruptedIOException("Interrupted while draining the write pipeline");
+        } finally {
+            roots.close();
+            allocator.close();
+        }
+        throwIfFailed();
+    }
+
+    @FunctionalInterface
+    public interface Serializer<S> {
+        S serialize(VectorSchemaRoot root) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Committer<S> {
+        void commit(S value) throws IOException;
+    }
+
+    private record Chunk<T>(long sequence, T[] values) {
+    }
+
+    private record Vectorized(long sequence, VectorSchemaRoot root) {
+    }
+
+    private record Serialized<S>(long sequence, S value) {
+    }
+}
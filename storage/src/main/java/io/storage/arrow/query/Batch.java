@@ -0,0 +1,36 @@
+package io.storage.arrow.query;
+
+import io.storage.arrow.Utf8Column;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+
+/**
+ * A loaded batch as seen by the conditions: columns are looked up by path, struct children as {@code address.city}.
+ *
+ * @param root         vectors of the batch
+ * @param dictionaries dictionaries of the encoded columns of the batch
+ */
+public record Batch(VectorSchemaRoot root, DictionaryProvider dictionaries) {
+
+    public int rowCount() {
+        return root.getRowCount();
+    }
+
+    public FieldVector vector(String path) {
+        final String[] names = path.split("\\.");
+        FieldVector vector = root.getVector(names[0]);
+        for (int i = 1; i < names.length && vector != null; i++) {
+            vector = ((StructVector) vector).getChild(names[i]);
+        }
+        if (vector == null) {
+            throw new IllegalArgumentException("No column " + path + " in " + root.getSchema());
+        }
+        return vector;
+    }
+
+    public Utf8Column utf8(String path) {
+        return Utf8Column.of(vector(path), dictionaries);
+    }
+}
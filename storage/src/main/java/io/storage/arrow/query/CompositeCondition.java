@@ -0,0 +1,116 @@
+package io.storage.arrow.query;
+
+import io.storage.arrow.BatchStats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boolean combinations of conditions. The intermediate selections are borrowed from {@link Scratch}, so filtering
+ * doesn't allocate once every reading thread has seen its largest batch.
+ */
+final class CompositeCondition {
+
+    private CompositeCondition() {
+    }
+
+    /**
+     * Every condition narrows the rows left by the previous ones.
+     */
+    record And(List<Condition> conditions) implements Condition {
+        @Override
+        public void filter(Batch batch, Selection selection) {
+            for (Condition condition : conditions) {
+                if (selection.isEmpty()) {
+                    return;
+                }
+                condition.filter(batch, selection);
+            }
+        }
+
+        @Override
+        public boolean mayMatch(BatchStats stats) {
+            return conditions.stream().allMatch(condition -> condition.mayMatch(stats));
+        }
+    }
+
+    /**
+     * Every condition only evaluates the rows none of the previous ones matched.
+     */
+    record Or(List<Condition> conditions) implements Condition {
+        @Override
+        public void filter(Batch batch, Selection selection) {
+            final Scratch scratch = Scratch.get();
+            try {
+                final Selection matched = scratch.borrow();
+                matched.selectNone(selection.rowCount());
+                final Selection remaining = scratch.borrow();
+                remaining.copyFrom(selection);
+                final Selection candidates = scratch.borrow();
+                for (Condition condition : conditions) {
+                    if (remaining.isEmpty()) {
+                        break;
+                    }
+                    candidates.copyFrom(remaining);
+                    condition.filter(batch, candidates);
+                    matched.or(candidates);
+                    remaining.andNot(candidates);
+                }
+                selection.copyFrom(matched);
+            } finally {
+                scratch.release(3);
+            }
+        }
+
+        @Override
+        public boolean mayMatch(BatchStats stats) {
+            return conditions.stream().anyMatch(condition -> condition.mayMatch(stats));
+        }
+    }
+
+    record Not(Condition condition) implements Condition {
+        @Override
+        public void filter(Batch batch, Selection selection) {
+            final Scratch scratch = Scratch.get();
+            try {
+                final Selection matched = scratch.borrow();
+                matched.copyFrom(selection);
+                condition.filter(batch, matched);
+                selection.andNot(matched);
+            } finally {
+                scratch.release(1);
+            }
+        }
+
+        @Override
+        public boolean mayMatch(BatchStats stats) {
+            // the statistics can't tell that every row matches the negated condition
+            return true;
+        }
+    }
+
+    /**
+     * Selections of a thread, used as a stack: a nested condition borrows the ones above those of its parent.
+     */
+    private static final class Scratch {
+        private static final ThreadLocal<Scratch> CURRENT = ThreadLocal.withInitial(Scratch::new);
+
+        private final List<Selection> selections = new ArrayList<>();
+        private int depth = 0;
+
+        static Scratch get() {
+            return CURRENT.get();
+        }
+
+        Selection borrow() {
+            if (depth == selections.size()) {
+                selections.add(new Selection());
+            }
+            return selections.get(depth++);
+        }
+
+        void release(int count) {
+            depth -= count;
+        }
+    }
+}
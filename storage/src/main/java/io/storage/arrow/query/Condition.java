@@ -0,0 +1,95 @@
+package io.storage.arrow.query;
+
+import io.storage.arrow.BatchStats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Row condition over the columns of a batch, evaluated a column at a time. Conditions narrow a {@link Selection}: a
+ * condition only evaluates the rows the previous ones kept, so the most selective condition of a conjunction should
+ * come first. Null values never match a comparison.
+ */
+public interface Condition {
+
+    /**
+     * Unselects the selected rows which don't match.
+     */
+    void filter(Batch batch, Selection selection);
+
+    /**
+     * @return false only if no row of a batch with these statistics can match
+     */
+    boolean mayMatch(BatchStats stats);
+
+    /**
+     * @return the rows of the batch matching
+     */
+    default Selection select(Batch batch) {
+        final Selection selection = new Selection();
+        select(batch, selection);
+        return selection;
+    }
+
+    /**
+     * Sets {@code selection}, reused between batches, to the rows of the batch matching.
+     */
+    default void select(Batch batch, Selection selection) {
+        selection.selectAll(batch.rowCount());
+        filter(batch, selection);
+    }
+
+    static Condition eq(String column, long value) {
+        return new IntegerCondition(column, value, value);
+    }
+
+    /**
+     * Inclusive range of an integer column.
+     */
+    static Condition range(String column, long min, long max) {
+        return new IntegerCondition(column, min, max);
+    }
+
+    static Condition in(String column, long... values) {
+        return new IntegerCondition(column, values);
+    }
+
+    static Condition eq(String column, String value) {
+        return new StringCondition(column, StringCondition.Kind.EQUALS, utf8(value));
+    }
+
+    static Condition prefix(String column, String prefix) {
+        return new StringCondition(column, StringCondition.Kind.PREFIX, utf8(prefix));
+    }
+
+    static Condition suffix(String column, String suffix) {
+        return new StringCondition(column, StringCondition.Kind.SUFFIX, utf8(suffix));
+    }
+
+    static Condition contains(String column, String infix) {
+        return new StringCondition(column, StringCondition.Kind.CONTAINS, utf8(infix));
+    }
+
+    static Condition in(String column, String... values) {
+        return new StringCondition(column, List.of(values).stream().map(Condition::utf8).toList());
+    }
+
+    static Condition and(Condition... conditions) {
+        return new CompositeCondition.And(List.of(conditions));
+    }
+
+    static Condition or(Condition... conditions) {
+        return new CompositeCondition.Or(List.of(conditions));
+    }
+
+    /**
+     * Rows not matching {@code condition}, null values included.
+     */
+    static Condition not(Condition condition) {
+        return new CompositeCondition.Not(condition);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,285 @@
+package io.storage.arrow.query;
+
+import io.storage.arrow.Utf8Column;
+import io.storage.arrow.Utf8Predicate;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import okio.ByteString;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.vector.BaseIntVector;
+
+import java.util.Arrays;
+
+/**
+ * Hash aggregation of integer columns grouped by a Utf8 column: the row count of every group, and the count, sum, min
+ * and max of the non-null values of every aggregated column. Groups are numbered in order of first appearance.
+ * <p>
+ * Keys are hashed and compared in place in the Arrow data buffer and appended to a single byte array when a group is
+ * created; accumulators are primitive arrays indexed by {@code group * valueColumns + column}. On a dictionary-encoded
+ * key column every dictionary value is looked up once per batch and rows are grouped by index. Not thread-safe:
+ * parallel aggregations keep a group-by per thread and {@link #merge} them.
+ */
+public final class GroupBy {
+
+    private static final int INITIAL_GROUPS = 16;
+
+    private final int valueColumns;
+
+    // open addressing, a slot holds a group plus one
+    private int[] slots = new int[INITIAL_GROUPS * 2];
+    private int[] hashes = new int[INITIAL_GROUPS];
+
+    // key of a group: keyBytes[keyOffsets[group], keyOffsets[group + 1])
+    private final ByteArrayList keyBytes = new ByteArrayList();
+    private int[] keyOffsets = new int[INITIAL_GROUPS + 1];
+
+    private long[] rows = new long[INITIAL_GROUPS];
+    private long[] counts;
+    private long[] sums;
+    private long[] mins;
+    private long[] maxs;
+    private int groupCount;
+
+    private final Probe probe = new Probe();
+
+    /**
+     * @param valueColumns number of aggregated columns
+     */
+    public GroupBy(int valueColumns) {
+        this.valueColumns = valueColumns;
+        this.counts = new long[INITIAL_GROUPS * valueColumns];
+        this.sums = new long[INITIAL_GROUPS * valueColumns];
+        this.mins = new long[INITIAL_GROUPS * valueColumns];
+        this.maxs = new long[INITIAL_GROUPS * valueColumns];
+    }
+
+    /**
+     * Aggregates the selected rows with a non-null key, unsigned vectors are aggregated by their unsigned value.
+     *
+     * @param keys   grouping column
+     * @param values aggregated columns, as many as {@code valueColumns}
+     */
+    public void add(Utf8Column keys, Selection selection, BaseIntVector... values) {
+        if (values.length != valueColumns) {
+            throw new IllegalArgumentException("Expected " + valueColumns + " columns, got " + values.length);
+        }
+        if (keys.isEncoded()) {
+            // -1 until the dictionary value is seen in the batch
+            final int[] groups = new int[keys.dictionarySize()];
+            Arrays.fill(groups, -1);
+            for (int row = selection.nextSetBit(0); row >= 0; row = selection.nextSetBit(row + 1)) {
+                if (keys.isNull(row)) {
+                    continue;
+                }
+                final int id = keys.id(row);
+                if (groups[id] < 0) {
+                    keys.dictionaryMatches(id, probe);
+                    groups[id] = probe.group;
+                }
+                accumulate(groups[id], values, row);
+            }
+        } else {
+            for (int row = selection.nextSetBit(0); row >= 0; row = selection.nextSetBit(row + 1)) {
+                if (!keys.isNull(row)) {
+                    keys.matches(row, probe);
+                    accumulate(probe.group, values, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the groups of {@code other} to these, keys are compared as bytes.
+     *
+     * @return this group-by
+     */
+    public GroupBy merge(GroupBy other) {
+        if (other.valueColumns != valueColumns) {
+            throw new IllegalArgumentException("Expected " + valueColumns + " columns, got " + other.valueColumns);
+        }
+        final byte[] bytes = other.keyBytes.elements();
+        for (int otherGroup = 0; otherGroup < other.groupCount; otherGroup++) {
+            final int offset = other.keyOffsets[otherGroup];
+            final int group = findOrCreate(
+                    other.hashes[otherGroup], bytes, offset, other.keyOffsets[otherGroup + 1] - offset);
+            rows[group] += other.rows[otherGroup];
+            for (int column = 0; column < valueColumns; column++) {
+                final int index = group * valueColumns + column;
+                final int otherIndex = otherGroup * valueColumns + column;
+                counts[index] += other.counts[otherIndex];
+                sums[index] += other.sums[otherIndex];
+                mins[index] = Math.min(mins[index], other.mins[otherIndex]);
+                maxs[index] = Math.max(maxs[index], other.maxs[otherIndex]);
+            }
+        }
+        return this;
+    }
+
+    public int groupCount() {
+        return groupCount;
+    }
+
+    public ByteString key(int group) {
+        return ByteString.of(keyBytes.elements(), keyOffsets[group], keyOffsets[group + 1] - keyOffsets[group]);
+    }
+
+    /**
+     * @return number of rows of the group
+     */
+    public long count(int group) {
+        return rows[group];
+    }
+
+    /**
+     * @return number of non-null values of the column in the group
+     */
+    public long count(int group, int column) {
+        return counts[group * valueColumns + column];
+    }
+
+    public long sum(int group, int column) {
+        return sums[group * valueColumns + column];
+    }
+
+    /**
+     * @return smallest value of the column in the group, {@link Long#MAX_VALUE} without values
+     */
+    public long min(int group, int column) {
+        return mins[group * valueColumns + column];
+    }
+
+    /**
+     * @return largest value of the column in the group, {@link Long#MIN_VALUE} without values
+     */
+    public long max(int group, int column) {
+        return maxs[group * valueColumns + column];
+    }
+
+    /**
+     * @return average of the values of the column in the group, NaN without values
+     */
+    public double avg(int group, int column) {
+        return (double) sum(group, column) / count(group, column);
+    }
+
+    private void accumulate(int group, BaseIntVector[] values, int row) {
+        rows[group]++;
+        int index = group * valueColumns;
+        for (BaseIntVector vector : values) {
+            if (!vector.isNull(row)) {
+                final long value = vector.getValueAsLong(row);
+                counts[index]++;
+                sums[index] += value;
+                mins[index] = Math.min(mins[index], value);
+                maxs[index] = Math.max(maxs[index], value);
+            }
+            index++;
+        }
+    }
+
+    private int findOrCreate(ArrowBuf data, long start, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + data.getByte(start + i);
+        }
+        hash = HashCommon.mix(hash);
+
+        final int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            final int group = slots[slot] - 1;
+            if (hashes[group] == hash && keyEquals(group, data, start, length)) {
+                return group;
+            }
+            slot = (slot + 1) & mask;
+        }
+        for (int i = 0; i < length; i++) {
+            keyBytes.add(data.getByte(start + i));
+        }
+        return create(hash, slot);
+    }
+
+    private int findOrCreate(int hash, byte[] key, int offset, int length) {
+        final int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            final int group = slots[slot] - 1;
+            if (hashes[group] == hash && keyOffsets[group + 1] - keyOffsets[group] == length
+                    && Arrays.equals(keyBytes.elements(), keyOffsets[group], keyOffsets[group + 1],
+                    key, offset, offset + length)) {
+                return group;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keyBytes.addElements(keyBytes.size(), key, offset, length);
+        return create(hash, slot);
+    }
+
+    private boolean keyEquals(int group, ArrowBuf data, long start, int length) {
+        final int offset = keyOffsets[group];
+        if (keyOffsets[group + 1] - offset != length) {
+            return false;
+        }
+        final byte[] bytes = keyBytes.elements();
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != data.getByte(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a group in the free slot, its key having just been appended to the key bytes.
+     */
+    private int create(int hash, int slot) {
+        final int group = groupCount++;
+        if (group == rows.length) {
+            final int capacity = rows.length * 2;
+            hashes = IntArrays.grow(hashes, capacity);
+            keyOffsets = IntArrays.grow(keyOffsets, capacity + 1);
+            rows = LongArrays.grow(rows, capacity);
+            counts = LongArrays.grow(counts, capacity * valueColumns);
+            sums = LongArrays.grow(sums, capacity * valueColumns);
+            mins = LongArrays.grow(mins, capacity * valueColumns);
+            maxs = LongArrays.grow(maxs, capacity * valueColumns);
+        }
+        hashes[group] = hash;
+        keyOffsets[group + 1] = keyBytes.size();
+        Arrays.fill(mins, group * valueColumns, (group + 1) * valueColumns, Long.MAX_VALUE);
+        Arrays.fill(maxs, group * valueColumns, (group + 1) * valueColumns, Long.MIN_VALUE);
+        slots[slot] = group + 1;
+        if (groupCount * 2 > slots.length) {
+            rehash();
+        }
+        return group;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        final int mask = slots.length - 1;
+        for (int group = 0; group < groupCount; group++) {
+            int slot = hashes[group] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = group + 1;
+        }
+    }
+
+    /**
+     * Looks up the group of the value it is tested with, so the value is read in place.
+     */
+    private final class Probe implements Utf8Predicate {
+
+        private int group;
+
+        @Override
+        public boolean test(ArrowBuf data, long start, int length) {
+            group = findOrCreate(data, start, length);
+            return true;
+        }
+    }
+}
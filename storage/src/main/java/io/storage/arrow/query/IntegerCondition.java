@@ -0,0 +1,101 @@
+package io.storage.arrow.query;
+
+import io.storage.arrow.BatchStats;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.BaseFixedWidthVector;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.UInt4Vector;
+
+/**
+ * Inclusive range or set of values of an integer column, unsigned columns are compared by their unsigned value.
+ * Ranges over 4-byte columns are evaluated by a {@link RangeKernel}, with SIMD lanes when the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}.
+ */
+@Slf4j
+final class IntegerCondition implements Condition {
+
+    private static final RangeKernel RANGE_KERNEL = loadRangeKernel();
+
+    private final String column;
+    private final long min;
+    private final long max;
+    // null for a range
+    private final LongSet values;
+
+    IntegerCondition(String column, long min, long max) {
+        this.column = column;
+        this.min = min;
+        this.max = max;
+        this.values = null;
+    }
+
+    IntegerCondition(String column, long[] values) {
+        this.column = column;
+        this.values = new LongOpenHashSet(values);
+        long lowest = Long.MAX_VALUE;
+        long highest = Long.MIN_VALUE;
+        for (long value : values) {
+            lowest = Math.min(lowest, value);
+            highest = Math.max(highest, value);
+        }
+        this.min = lowest;
+        this.max = highest;
+    }
+
+    @Override
+    public void filter(Batch batch, Selection selection) {
+        final BaseIntVector vector = (BaseIntVector) batch.vector(column);
+        if (values == null && (vector instanceof IntVector || vector instanceof UInt4Vector)) {
+            filterInts((BaseFixedWidthVector) vector, vector instanceof UInt4Vector, selection);
+        } else if (values == null) {
+            selection.retain(row -> {
+                if (vector.isNull(row)) {
+                    return false;
+                }
+                final long value = vector.getValueAsLong(row);
+                return min <= value && value <= max;
+            });
+        } else {
+            selection.retain(row -> !vector.isNull(row) && values.contains(vector.getValueAsLong(row)));
+        }
+    }
+
+    /**
+     * Clamps the range to the values of the column before handing it to the kernel.
+     */
+    private void filterInts(BaseFixedWidthVector vector, boolean unsigned, Selection selection) {
+        final long lowest = unsigned ? 0 : Integer.MIN_VALUE;
+        final long highest = unsigned ? 0xFFFF_FFFFL : Integer.MAX_VALUE;
+        if (min > max || max < lowest || min > highest) {
+            selection.selectNone(selection.rowCount());
+            return;
+        }
+        RANGE_KERNEL.retain(vector, unsigned, (int) Math.max(min, lowest), (int) Math.min(max, highest), selection);
+    }
+
+    @Override
+    public boolean mayMatch(BatchStats stats) {
+        return stats.mayOverlap(column, min, max);
+    }
+
+    /**
+     * The Vector API kernel is loaded by name, so its classes are only linked when the incubator module is there.
+     */
+    private static RangeKernel loadRangeKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                final RangeKernel kernel = (RangeKernel) Class.forName("io.storage.arrow.query.VectorRangeKernel")
+                        .getDeclaredConstructor()
+                        .newInstance();
+                log.info("Integer ranges evaluated with the Vector API");
+                return kernel;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warn("Can't load the Vector API kernel, falling back to scalar", e);
+            }
+        }
+        return new ScalarRangeKernel();
+    }
+}
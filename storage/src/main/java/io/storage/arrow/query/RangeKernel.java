@@ -0,0 +1,22 @@
+package io.storage.arrow.query;
+
+import org.apache.arrow.vector.BaseFixedWidthVector;
+
+/**
+ * Range predicate over the data buffer of a 4-byte integer vector, {@code IntVector} or {@code UInt4Vector}.
+ */
+interface RangeKernel {
+
+    /**
+     * Unselects the selected rows which are null or outside {@code [low, high]}.
+     *
+     * @param unsigned whether the values and bounds are compared as unsigned ints
+     */
+    void retain(BaseFixedWidthVector vector, boolean unsigned, int low, int high, Selection selection);
+
+    static boolean inRange(int value, boolean unsigned, int low, int high) {
+        return unsigned
+                ? Integer.compareUnsigned(value, low) >= 0 && Integer.compareUnsigned(value, high) <= 0
+                : low <= value && value <= high;
+    }
+}
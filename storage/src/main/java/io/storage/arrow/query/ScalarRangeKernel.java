@@ -0,0 +1,17 @@
+package io.storage.arrow.query;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.vector.BaseFixedWidthVector;
+
+/**
+ * Evaluates the selected rows one at a time, when the Vector API isn't available.
+ */
+final class ScalarRangeKernel implements RangeKernel {
+
+    @Override
+    public void retain(BaseFixedWidthVector vector, boolean unsigned, int low, int high, Selection selection) {
+        final ArrowBuf data = vector.getDataBuffer();
+        selection.retain(row -> !vector.isNull(row)
+                && RangeKernel.inRange(data.getInt((long) row * Integer.BYTES), unsigned, low, high));
+    }
+}
@@ -0,0 +1,167 @@
+package io.storage.arrow.query;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Rows of a batch still selected by the conditions evaluated so far, as a bitset. Set operations work a word, so 64
+ * rows, at a time. A selection keeps its words between batches: reusing one per reading thread makes filtering
+ * allocation-free once the largest batch has been seen.
+ */
+public final class Selection {
+
+    private long[] words = new long[0];
+    private int rowCount;
+
+    /**
+     * Selects every row of a batch.
+     */
+    public static Selection all(int rowCount) {
+        final Selection selection = new Selection();
+        selection.selectAll(rowCount);
+        return selection;
+    }
+
+    /**
+     * Selects every row of a batch of {@code rowCount} rows, reusing the words when they are large enough.
+     */
+    public void selectAll(int rowCount) {
+        resize(rowCount);
+        final int length = wordCount(rowCount);
+        for (int i = 0; i < length; i++) {
+            words[i] = -1L;
+        }
+        if ((rowCount & 63) != 0) {
+            words[length - 1] = (1L << rowCount) - 1;
+        }
+    }
+
+    /**
+     * Unselects every row of a batch of {@code rowCount} rows.
+     */
+    public void selectNone(int rowCount) {
+        resize(rowCount);
+        for (int i = 0; i < wordCount(rowCount); i++) {
+            words[i] = 0;
+        }
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public boolean isSelected(int row) {
+        return (words[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < wordCount(rowCount); i++) {
+            if (words[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of selected rows
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < wordCount(rowCount); i++) {
+            cardinality += Long.bitCount(words[i]);
+        }
+        return cardinality;
+    }
+
+    /**
+     * Iterates the selected rows: {@code for (int row = s.nextSetBit(0); row >= 0; row = s.nextSetBit(row + 1))}.
+     *
+     * @return the first selected row from {@code from} on, or -1
+     */
+    public int nextSetBit(int from) {
+        if (from >= rowCount) {
+            return -1;
+        }
+        final int length = wordCount(rowCount);
+        int index = from >>> 6;
+        long word = words[index] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (index << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++index == length) {
+                return -1;
+            }
+            word = words[index];
+        }
+    }
+
+    public void and(Selection other) {
+        for (int i = 0; i < wordCount(rowCount); i++) {
+            words[i] &= other.words[i];
+        }
+    }
+
+    public void or(Selection other) {
+        for (int i = 0; i < wordCount(rowCount); i++) {
+            words[i] |= other.words[i];
+        }
+    }
+
+    public void andNot(Selection other) {
+        for (int i = 0; i < wordCount(rowCount); i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    /**
+     * Makes this selection equal to {@code other}, reusing the words when they are large enough.
+     */
+    public void copyFrom(Selection other) {
+        resize(other.rowCount);
+        System.arraycopy(other.words, 0, words, 0, wordCount(rowCount));
+    }
+
+    public Selection copy() {
+        final Selection copy = new Selection();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Keeps the selected rows matching, only they are tested.
+     */
+    void retain(IntPredicate matches) {
+        for (int i = 0; i < wordCount(rowCount); i++) {
+            long word = words[i];
+            long kept = word;
+            while (word != 0) {
+                final int bit = Long.numberOfTrailingZeros(word);
+                if (!matches.test((i << 6) + bit)) {
+                    kept &= ~(1L << bit);
+                }
+                word &= word - 1;
+            }
+            words[i] = kept;
+        }
+    }
+
+    /**
+     * Direct access for kernels evaluating 64 rows at a time, only the first {@code (rowCount + 63) / 64} words are
+     * valid.
+     */
+    long[] words() {
+        return words;
+    }
+
+    private void resize(int rowCount) {
+        this.rowCount = rowCount;
+        if (words.length < wordCount(rowCount)) {
+            words = new long[wordCount(rowCount)];
+        }
+    }
+
+    private static int wordCount(int rowCount) {
+        return (rowCount + 63) >>> 6;
+    }
+}
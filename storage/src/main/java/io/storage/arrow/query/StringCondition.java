@@ -0,0 +1,69 @@
+package io.storage.arrow.query;
+
+import io.storage.arrow.BatchStats;
+import io.storage.arrow.Utf8Column;
+import io.storage.arrow.Utf8Kernels;
+import io.storage.arrow.Utf8Predicate;
+
+import java.util.List;
+
+/**
+ * Comparison of a Utf8 column with constant bytes, the values are compared in place in the data buffer. On a
+ * dictionary-encoded column every dictionary value is tested once and the rows are matched by index.
+ */
+final class StringCondition implements Condition {
+
+    enum Kind {
+        EQUALS, PREFIX, SUFFIX, CONTAINS, IN
+    }
+
+    private final String column;
+    private final Kind kind;
+    private final byte[] operand;
+    // only for IN
+    private final List<byte[]> values;
+    private final Utf8Predicate predicate;
+
+    StringCondition(String column, Kind kind, byte[] operand) {
+        this.column = column;
+        this.kind = kind;
+        this.operand = operand;
+        this.values = List.of();
+        this.predicate = switch (kind) {
+            case EQUALS -> Utf8Kernels.equalTo(operand);
+            case PREFIX -> Utf8Kernels.startsWith(operand);
+            case SUFFIX -> Utf8Kernels.endsWith(operand);
+            case CONTAINS -> Utf8Kernels.contains(operand);
+            case IN -> throw new IllegalArgumentException("IN takes a list of values");
+        };
+    }
+
+    StringCondition(String column, List<byte[]> values) {
+        this.column = column;
+        this.kind = Kind.IN;
+        this.operand = null;
+        this.values = values;
+        this.predicate = Utf8Kernels.in(values);
+    }
+
+    @Override
+    public void filter(Batch batch, Selection selection) {
+        final Utf8Column utf8 = batch.utf8(column);
+        if (utf8.isEncoded()) {
+            final boolean[] matching = utf8.matchingIds(predicate);
+            selection.retain(row -> !utf8.isNull(row) && matching[utf8.id(row)]);
+        } else {
+            selection.retain(row -> !utf8.isNull(row) && utf8.matches(row, predicate));
+        }
+    }
+
+    @Override
+    public boolean mayMatch(BatchStats stats) {
+        return switch (kind) {
+            case EQUALS -> stats.mayContain(column, operand);
+            case PREFIX -> stats.mayStartWith(column, operand);
+            case SUFFIX, CONTAINS -> true;
+            case IN -> values.stream().anyMatch(value -> stats.mayContain(column, value));
+        };
+    }
+}
@@ -1,14 +1,24 @@
 package io.storage.arrow.t;
 
+import io.storage.arrow.Allocators;
+import io.storage.arrow.BatchStats;
+import io.storage.arrow.Dataset;
+import io.storage.arrow.LowCardinalityEncoder;
 import io.storage.arrow.RocksDbArrowWriter;
+import io.storage.arrow.WritePipeline;
 import io.storage.rocks.KVRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorLoader;
 import org.apache.arrow.vector.VectorSchemaRoot;
-import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
 import org.apache.arrow.vector.types.pojo.Schema;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 @Slf4j
 public class ChunkedWriter<T> {
@@ -16,43 +26,97 @@ public class ChunkedWriter<T> {
     private static final int chunkSize = 20_000;
 
     private final KVRepository<byte[], byte[]> repository;
+    private final Dataset dataset;
     private final Vectorizer<T> vectorizer;
+    private final int workers = Runtime.getRuntime().availableProcessors();
 
 
-    public ChunkedWriter(KVRepository<byte[], byte[]> repository, Vectorizer<T> vectorizer) {
+    public ChunkedWriter(KVRepository<byte[], byte[]> repository, Dataset dataset, Vectorizer<T> vectorizer) {
         this.repository = repository;
+        this.dataset = dataset;
         this.vectorizer = vectorizer;
     }
 
+    /**
+     * Chunks are vectorized in parallel and appended to the stream in order by the pipeline's serializer thread.
+     * Low-cardinality string columns, chosen from a sample spread over the values, are dictionary-encoded for the
+     * whole stream; the stream writer re-sends a dictionary whenever a chunk added values to it. When a dictionary
+     * overflows all the same, the stream is written again with that column left plain. Every chunk gets a
+     * {@link BatchStats} sidecar so readers can drop it from the stream.
+     */
     public void write(T[] values, Schema schema) throws IOException {
-        DictionaryProvider.MapDictionaryProvider dictProvider = new DictionaryProvider.MapDictionaryProvider();
-        try (RootAllocator allocator = new RootAllocator();
-             VectorSchemaRoot schemaRoot = VectorSchemaRoot.create(schema, allocator);
-             //todo
-             RocksDbArrowWriter fileWriter = new RocksDbArrowWriter(repository, schemaRoot, dictProvider)) {
+        final Set<String> plain = new HashSet<>();
+        for (Set<String> overflowed = write(values, schema, plain); !overflowed.isEmpty();
+             overflowed = write(values, schema, plain)) {
+            log.info("Rewriting {} without dictionaries for {}", dataset.name(), overflowed);
+            plain.addAll(overflowed);
+        }
+    }
+
+    /**
+     * @param plain columns not to encode
+     * @return columns whose dictionary overflowed, the stream is incomplete unless it is empty
+     */
+    private Set<String> write(T[] values, Schema schema, Set<String> plain) throws IOException {
+        try (BufferAllocator allocator = Allocators.child("chunked-writer-" + dataset.name());
+             LowCardinalityEncoder encoder = sampleEncoder(values, schema, allocator, plain);
+             VectorSchemaRoot schemaRoot = VectorSchemaRoot.create(encoder.getEncodedSchema(), allocator);
+             RocksDbArrowWriter fileWriter = new RocksDbArrowWriter(
+                     repository, dataset, schemaRoot, encoder.getDictionaries())) {
 
             log.debug("Start writing");
             fileWriter.start();
 
-            int index = 0;
-            while (index < values.length) {
-                schemaRoot.allocateNew();
-                int chunkIndex = 0;
-                while (chunkIndex < chunkSize && index + chunkIndex < values.length) {
-                    vectorizer.vectorize(values[index + chunkIndex], chunkIndex, schemaRoot);
-                    chunkIndex++;
-                }
-                schemaRoot.setRowCount(chunkIndex);
-                log.debug("Filled chunk with {} items; {} items written", chunkIndex, index + chunkIndex);
-                fileWriter.writeBatch();
-                log.debug("Chunk written");
+            final VectorLoader loader = new VectorLoader(schemaRoot);
+            try (WritePipeline<T, Void> pipeline = new WritePipeline<T, Void>(
+                    allocator, schema, vectorizer::vectorize, workers, workers * 2,
+                    chunk -> {
+                        // statistics are taken on the plain values, the encoding moves some of them out of the chunk
+                        final BatchStats stats = BatchStats.of(chunk);
+                        // hand the encoded chunk buffers over to the writer's root without copying them
+                        try (LowCardinalityEncoder.EncodedBatch encoded = encoder.encode(chunk);
+                             ArrowRecordBatch batch = new VectorUnloader(encoded.root()).getRecordBatch()) {
+                            loader.load(batch);
+                        }
+                        fileWriter.writeBatch(stats);
+                        schemaRoot.clear();
+                        return null;
+                    },
+                    ignored -> log.debug("Chunk written"))) {
 
-                index += chunkIndex;
-                schemaRoot.clear();
+                int index = 0;
+                while (index < values.length) {
+                    final int chunkEnd = Math.min(values.length, index + chunkSize);
+                    pipeline.submit(Arrays.copyOfRange(values, index, chunkEnd));
+                    log.debug("Submitted chunk with {} items; {} items submitted", chunkEnd - index, chunkEnd);
+                    index = chunkEnd;
+                }
+            } catch (IOException e) {
+                if (encoder.getOverflowed().isEmpty()) {
+                    throw e;
+                }
+                return encoder.getOverflowed();
             }
 
             log.debug("Writing done");
             fileWriter.end();
+            return Set.of();
+        }
+    }
+
+    /**
+     * Vectorizes a chunk of values evenly spread over the array to pick the columns worth a dictionary.
+     */
+    private LowCardinalityEncoder sampleEncoder(T[] values, Schema schema, BufferAllocator allocator,
+                                                Set<String> plain) {
+        try (VectorSchemaRoot sample = VectorSchemaRoot.create(schema, allocator)) {
+            sample.allocateNew();
+            final int sampleSize = Math.min(values.length, chunkSize);
+            for (int i = 0; i < sampleSize; i++) {
+                vectorizer.vectorize(values[(int) ((long) i * values.length / sampleSize)], i, sample);
+            }
+            sample.setRowCount(sampleSize);
+            return new LowCardinalityEncoder(allocator, sample, plain);
         }
     }
 
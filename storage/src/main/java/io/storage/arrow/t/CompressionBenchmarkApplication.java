@@ -0,0 +1,89 @@
+package io.storage.arrow.t;
+
+import io.storage.arrow.BatchReader;
+import io.storage.arrow.BatchWriter;
+import io.storage.arrow.Dataset;
+import io.storage.arrow.DatasetCatalog;
+import io.storage.arrow.WritePipeline;
+import io.storage.rocks.KVCursor;
+import io.storage.rocks.KVRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.compression.CompressionUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small application to compare the record batch codecs on the same people:
+ * - write the people into one dataset per codec
+ * - sum the bytes of the stored segments
+ * - scan every dataset and log the rows read per second
+ */
+@Slf4j
+public class CompressionBenchmarkApplication {
+
+    private static final int CHUNK_SIZE = 20_000;
+
+    /**
+     * Main method: writing, measuring and scanning every codec.
+     */
+    public void doBenchmark(KVRepository<byte[], byte[]> repository, Person[] people) throws IOException {
+        final DatasetCatalog catalog = new DatasetCatalog(repository);
+        for (CompressionUtil.CodecType codec : List.of(
+                CompressionUtil.CodecType.NO_COMPRESSION,
+                CompressionUtil.CodecType.LZ4_FRAME,
+                CompressionUtil.CodecType.ZSTD)) {
+            final Dataset dataset = catalog.getOrCreate("people-" + codec.name().toLowerCase(), codec);
+            clear(repository, dataset);
+            write(repository, dataset, people);
+
+            final long storedBytes = storedBytes(repository, dataset);
+            final AtomicLong rows = new AtomicLong();
+            final long start = System.nanoTime();
+            new BatchReader(repository, dataset, (batch, dictionaries) -> rows.addAndGet(batch.getRowCount()))
+                    .readBatchesInParallel();
+            final long elapsed = System.nanoTime() - start;
+
+            log.info("Codec = {}; Stored bytes = {}; Bytes per row = {}; Scan = {} rows/s",
+                    codec, storedBytes, storedBytes / people.length, rows.get() * 1_000_000_000L / elapsed);
+        }
+    }
+
+    private void write(KVRepository<byte[], byte[]> repository, Dataset dataset, Person[] people)
+            throws IOException {
+        try (BatchWriter<Person> writer = new BatchWriter<>(
+                repository, dataset, ArrowSchemas::vectorizePerson, ArrowSchemas.personSchema());
+             WritePipeline<Person, BatchWriter.StoredBatch> pipeline =
+                     writer.pipelined(Runtime.getRuntime().availableProcessors())) {
+            int index = 0;
+            while (index < people.length) {
+                final int chunkEnd = Math.min(people.length, index + CHUNK_SIZE);
+                pipeline.submit(Arrays.copyOfRange(people, index, chunkEnd));
+                index = chunkEnd;
+            }
+        }
+    }
+
+    private long storedBytes(KVRepository<byte[], byte[]> repository, Dataset dataset) {
+        long bytes = 0;
+        try (KVCursor<byte[], byte[]> cursor = repository.scan(dataset.segmentsFrom(), dataset.segmentsTo())) {
+            while (cursor.next()) {
+                bytes += cursor.value().length;
+            }
+        }
+        return bytes;
+    }
+
+    private void clear(KVRepository<byte[], byte[]> repository, Dataset dataset) {
+        final List<byte[]> keys = new ArrayList<>();
+        try (KVCursor<byte[], byte[]> cursor = repository.scan(dataset.segmentsFrom(), dataset.statsTo())) {
+            while (cursor.next()) {
+                keys.add(cursor.key());
+            }
+        }
+        repository.deleteAll(keys);
+    }
+}
@@ -1,23 +1,20 @@
 package io.storage.arrow.t;
 
-import io.storage.arrow.RocksDbArrowReader;
+import io.storage.arrow.ColumnarReader;
+import io.storage.arrow.Dataset;
+import io.storage.arrow.query.Batch;
+import io.storage.arrow.query.Condition;
+import io.storage.arrow.query.GroupBy;
+import io.storage.arrow.query.Selection;
 import io.storage.rocks.KVRepository;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
 import lombok.extern.slf4j.Slf4j;
-import okio.ByteString;
-import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.UInt4Vector;
-import org.apache.arrow.vector.VarCharVector;
-import org.apache.arrow.vector.VectorSchemaRoot;
-import org.apache.arrow.vector.complex.StructVector;
-import org.apache.arrow.vector.ipc.ArrowStreamReader;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.List;
 
 /**
- * Small application to read chunked data from people.arrow file, and do some analytics on them:
+ * Small application to read only the needed columns of people, and do some analytics on them:
  * - filter people living in a street ending with 'way'
  * - group by city
  * - aggregate average age
@@ -25,86 +22,43 @@ import java.util.TreeMap;
 @Slf4j
 public class FilterSingleColumnApplication {
 
+    // Street ending in 'way'
+    private static final Condition FILTER = Condition.suffix("address.street", "way");
 
     /**
-     * Main method: reading batches, filtering and aggregating.
+     * Main method: reading the projected columns of every batch, filtering and aggregating.
      *
-     * @throws IOException If reading from Arrow file fails
+     * @param dataset Dataset of people to analyse, with the columns layout
+     * @throws IOException If reading the columns fails
      */
-    public void doAnalytics(KVRepository<byte[], byte[]> repository) throws IOException {
-        RootAllocator allocator = new RootAllocator();
-
-        try (RocksDbArrowReader reader = new RocksDbArrowReader(repository, allocator)) {
-            VectorSchemaRoot schemaRoot = reader.getVectorSchemaRoot();
-
-            // Aggregate: Using ByteString as it is faster than creating a String from a byte[]
-            Map<ByteString, Long> perCityCount = new TreeMap<>();
-            Map<ByteString, Long> perCitySum = new TreeMap<>();
-            processBatches(reader, schemaRoot, perCityCount, perCitySum);
-
-            // Print results
-            for (ByteString city : perCityCount.keySet()) {
-                double average = (double) perCitySum.get(city) / perCityCount.get(city);
-                log.info("City = {}; Average = {}", city, average);
-            }
-        }
-
-    }
-
-    /**
-     * Read batches, apply filters and write aggregation values into aggregation data structures
-     *
-     * @param reader       Reads batches from Arrow file
-     * @param schemaRoot   Schema root for read batches
-     * @param perCityCount Aggregation of count per city
-     * @param perCitySum   Aggregation of summed value per city
-     * @throws IOException If reading the arrow file goes wrong
-     */
-    private void processBatches(ArrowStreamReader reader, VectorSchemaRoot schemaRoot,
-                                Map<ByteString, Long> perCityCount, Map<ByteString, Long> perCitySum)
-            throws IOException {
-        // Reading the data, one batch at a time
-        while (reader.loadNextBatch()) {
-            int[] selectedIndexes = filterOnStreet(schemaRoot).elements();
-
-            aggregate(schemaRoot, selectedIndexes, perCityCount, perCitySum);
+    public void doAnalytics(KVRepository<byte[], byte[]> repository, Dataset dataset) throws IOException {
+        // Aggregate: age per city, cities are only copied out of the batches when first seen
+        GroupBy perCity = new GroupBy(1);
+
+        // The reader is sequential, one selection is reused by every batch
+        Selection selection = new Selection();
+        // Only the columns of the filter and of the aggregation are fetched
+        new ColumnarReader(repository, dataset, List.of("age", "address.street", "address.city"))
+                .read(FILTER::mayMatch, (schemaRoot, dictionaries) -> {
+                    Batch batch = new Batch(schemaRoot, dictionaries);
+                    FILTER.select(batch, selection);
+                    aggregate(batch, selection, perCity);
+                });
+
+        // Print results
+        for (int group = 0; group < perCity.groupCount(); group++) {
+            log.info("City = {}; Average = {}", perCity.key(group), perCity.avg(group, 0));
         }
     }
 
     /**
-     * Given the selected indexes, it copies the aggregation values into aggregation vectors
+     * Given the selected rows, it adds their age to the aggregation of their city
      *
-     * @param schemaRoot      Schema root of batch
-     * @param selectedIndexes Indexes to aggregate
-     * @param perCityCount    Aggregating counts per city
-     * @param perCitySum      Aggregating sums per city
+     * @param batch     Loaded batch
+     * @param selection Rows to aggregate
+     * @param perCity   Aggregating age per city
      */
-    private void aggregate(VectorSchemaRoot schemaRoot, int[] selectedIndexes, Map<ByteString, Long> perCityCount,
-                           Map<ByteString, Long> perCitySum) {
-        VarCharVector cityVector = (VarCharVector) ((StructVector) schemaRoot.getVector("address")).getChild("city");
-        UInt4Vector ageDataVector = (UInt4Vector) schemaRoot.getVector("age");
-
-        for (int selectedIndex : selectedIndexes) {
-            ByteString city = ByteString.of(cityVector.get(selectedIndex));
-            perCityCount.put(city, perCityCount.getOrDefault(city, 0L) + 1);
-            perCitySum.put(city, perCitySum.getOrDefault(city, 0L) + ageDataVector.get(selectedIndex));
-        }
+    private void aggregate(Batch batch, Selection selection, GroupBy perCity) {
+        perCity.add(batch.utf8("address.city"), selection, (UInt4Vector) batch.vector("age"));
     }
-
-    // Keep street ending in 'way'
-    private IntArrayList filterOnStreet(VectorSchemaRoot schemaRoot) {
-        StructVector addressVector = (StructVector) schemaRoot.getVector("address");
-        VarCharVector streetVector = (VarCharVector) addressVector.getChild("street");
-
-        IntArrayList streetSelectedIndexes = new IntArrayList();
-        byte[] suffixInBytes = "way".getBytes();
-        for (int i = 0; i < schemaRoot.getRowCount(); i++) {
-            if (ByteString.of(streetVector.get(i)).endsWith(suffixInBytes)) {
-                streetSelectedIndexes.add(i);
-            }
-        }
-        streetSelectedIndexes.trim();
-        return streetSelectedIndexes;
-    }
-
 }
@@ -1,5 +1,8 @@
 package io.storage.arrow.t;
 
+import io.storage.arrow.BatchWriter;
+import io.storage.arrow.Dataset;
+import io.storage.arrow.WritePipeline;
 import io.storage.rocks.KVRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.arrow.vector.FieldVector;
@@ -8,11 +11,13 @@ import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 @Slf4j
 public class GenerateRandomDataApplication {
 
+    private static final int CHUNK_SIZE = 20_000;
 
     /**
      * Writes a given array of people into a file. The people are written out in chunks of size CHUNK_SIZE. The end
@@ -23,16 +28,42 @@ public class GenerateRandomDataApplication {
      *
      * @param people     People to write to disk
      * @param repository
+     * @param dataset    Dataset to write the people into
      * @throws IOException Thrown if something goes wrong while writing to file 'people.arrow'.
      */
-    public void writeToArrowFile(Person[] people, KVRepository<byte[], byte[]> repository) throws IOException {
+    public void writeToArrowFile(Person[] people, KVRepository<byte[], byte[]> repository, Dataset dataset)
+            throws IOException {
 //        new ChunkedWriter<>(CHUNK_SIZE, this::vectorizePerson)
 //                .write(new File("people.arrow"), people, ArrowSchemas.personSchema());
-        new ChunkedWriter<>(repository, ArrowSchemas::vectorizePerson)
+        new ChunkedWriter<>(repository, dataset, ArrowSchemas::vectorizePerson)
                 .write(people, ArrowSchemas.personSchema());
 
     }
 
+    /**
+     * Writes a given array of people as batches of CHUNK_SIZE people. With a dataset of the columns layout every
+     * column of a batch gets its own key.
+     *
+     * @param people     People to write
+     * @param repository Repository to write into
+     * @param dataset    Dataset to write the people into
+     * @throws IOException Thrown if a batch can't be written
+     */
+    public void writeBatches(Person[] people, KVRepository<byte[], byte[]> repository, Dataset dataset)
+            throws IOException {
+        try (BatchWriter<Person> writer = new BatchWriter<>(
+                repository, dataset, ArrowSchemas::vectorizePerson, ArrowSchemas.personSchema());
+             WritePipeline<Person, BatchWriter.StoredBatch> pipeline =
+                     writer.pipelined(Runtime.getRuntime().availableProcessors())) {
+            int index = 0;
+            while (index < people.length) {
+                final int chunkEnd = Math.min(people.length, index + CHUNK_SIZE);
+                pipeline.submit(Arrays.copyOfRange(people, index, chunkEnd));
+                index = chunkEnd;
+            }
+        }
+    }
+
 
 
 }
@@ -1,20 +1,19 @@
 package io.storage.arrow.t;
 
+import io.storage.arrow.Allocators;
+import io.storage.arrow.Dataset;
 import io.storage.arrow.RocksDbArrowReader;
+import io.storage.arrow.query.Batch;
+import io.storage.arrow.query.Condition;
+import io.storage.arrow.query.GroupBy;
+import io.storage.arrow.query.Selection;
 import io.storage.rocks.KVRepository;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
 import lombok.extern.slf4j.Slf4j;
-import okio.ByteString;
-import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.UInt4Vector;
-import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
-import org.apache.arrow.vector.complex.StructVector;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Small application to read chunked data from people.arrow file, and do some analytics on them:
@@ -27,27 +26,31 @@ import java.util.Map;
 @Slf4j
 public class ProcessDataApplication {
 
+    // Age between 18 and 35 first as it keeps the fewest rows, last name starting with a P, street ending in 'way'
+    private static final Condition FILTER = Condition.and(
+            Condition.range("age", 18, 35),
+            Condition.prefix("lastName", "P"),
+            Condition.suffix("address.street", "way"));
 
     /**
      * Main method: reading batches, filtering and aggregating.
      *
+     * @param dataset Dataset of people to analyse
      * @throws IOException If reading from Arrow file fails
      */
-    public void doAnalytics(KVRepository<byte[], byte[]> repository) throws IOException {
-        RootAllocator allocator = new RootAllocator();
-
-        try (RocksDbArrowReader reader = new RocksDbArrowReader(repository, allocator)) {
+    public void doAnalytics(KVRepository<byte[], byte[]> repository, Dataset dataset) throws IOException {
+        try (BufferAllocator allocator = Allocators.child(getClass().getSimpleName());
+             // Batches which can't match are dropped before being decoded
+             RocksDbArrowReader reader = new RocksDbArrowReader(repository, dataset, allocator, FILTER::mayMatch)) {
             VectorSchemaRoot schemaRoot = reader.getVectorSchemaRoot();
 
-            // Aggregate: Using ByteString as it is faster than creating a String from a byte[]
-            Map<ByteString, Long> perCityCount = new HashMap<>();
-            Map<ByteString, Long> perCitySum = new HashMap<>();
-            processBatches(reader, schemaRoot, perCityCount, perCitySum);
+            // Aggregate: age per city, cities are only copied out of the batches when first seen
+            GroupBy perCity = new GroupBy(1);
+            processBatches(reader, schemaRoot, perCity);
 
             // Print results
-            for (ByteString city : perCityCount.keySet()) {
-                double average = (double) perCitySum.get(city) / perCityCount.get(city);
-                log.info("City = {}; Average = {}", city, average);
+            for (int group = 0; group < perCity.groupCount(); group++) {
+                log.info("City = {}; Average = {}", perCity.key(group), perCity.avg(group, 0));
             }
         }
     }
@@ -55,121 +58,33 @@ public class ProcessDataApplication {
     /**
      * Read batches, apply filters and write aggregation values into aggregation data structures
      *
-     * @param reader       Reads batches from Arrow file
-     * @param schemaRoot   Schema root for read batches
-     * @param perCityCount Aggregation of count per city
-     * @param perCitySum   Aggregation of summed value per city
+     * @param reader     Reads batches from Arrow file
+     * @param schemaRoot Schema root for read batches
+     * @param perCity    Aggregation of age per city
      * @throws IOException If reading the arrow file goes wrong
      */
     private void processBatches(RocksDbArrowReader reader,
                                 VectorSchemaRoot schemaRoot,
-                                Map<ByteString, Long> perCityCount,
-                                Map<ByteString, Long> perCitySum) throws IOException {
+                                GroupBy perCity) throws IOException {
+        Batch batch = new Batch(schemaRoot, reader);
+        // Reused by every batch
+        Selection selection = new Selection();
         // Reading the data, one batch at a time
         while (reader.loadNextBatch()) {
-            IntArrayList lastNameSelectedIndexes = filterOnLastName(schemaRoot);
-            IntArrayList ageSelectedIndexes = filterOnAge(schemaRoot);
-            IntArrayList streetSelectedIndexes = filterOnStreet(schemaRoot);
-
-            IntArrayList lastNameAndAge = intersection(lastNameSelectedIndexes, ageSelectedIndexes);
-            IntArrayList allIntersected = intersection(lastNameAndAge, streetSelectedIndexes);
-            int[] selectedIndexes = allIntersected.elements();
-
-            aggregate(schemaRoot, selectedIndexes, perCityCount, perCitySum);
-        }
-    }
-
-    /**
-     * Given the selected indexes, it copies the aggregation values into aggregation vectors
-     *
-     * @param schemaRoot      Schema root of batch
-     * @param selectedIndexes Indexes to aggregate
-     * @param perCityCount    Aggregating counts per city
-     * @param perCitySum      Aggregating sums per city
-     */
-    private void aggregate(VectorSchemaRoot schemaRoot,
-                           int[] selectedIndexes,
-                           Map<ByteString, Long> perCityCount,
-                           Map<ByteString, Long> perCitySum) {
-        VarCharVector cityVector = (VarCharVector) ((StructVector) schemaRoot.getVector("address")).getChild("city");
-        UInt4Vector ageDataVector = (UInt4Vector) schemaRoot.getVector("age");
-
-        for (int selectedIndex : selectedIndexes) {
-            ByteString city = ByteString.of(cityVector.get(selectedIndex));
-            perCityCount.put(city, perCityCount.getOrDefault(city, 0L) + 1);
-            perCitySum.put(city, perCitySum.getOrDefault(city, 0L) + ageDataVector.get(selectedIndex));
-        }
-    }
-
-    // Keep with last name starting with a P
-    private IntArrayList filterOnLastName(VectorSchemaRoot schemaRoot) {
-        VarCharVector lastName = (VarCharVector) schemaRoot.getVector("lastName");
-        IntArrayList lastNameSelectedIndexes = new IntArrayList();
-        byte[] prefixBytes = "P".getBytes();
-        for (int i = 0; i < schemaRoot.getRowCount(); i++) {
-            if (ByteString.of(lastName.get(i)).startsWith(prefixBytes)) {
-                lastNameSelectedIndexes.add(i);
-            }
-        }
-        lastNameSelectedIndexes.trim();
-        return lastNameSelectedIndexes;
-    }
+            FILTER.select(batch, selection);
 
-    // Keep with age between 18 and 35
-    private IntArrayList filterOnAge(VectorSchemaRoot schemaRoot) {
-        UInt4Vector age = (UInt4Vector) schemaRoot.getVector("age");
-        IntArrayList ageSelectedIndexes = new IntArrayList();
-        for (int i = 0; i < schemaRoot.getRowCount(); i++) {
-            int currentAge = age.get(i);
-            if (18 <= currentAge && currentAge <= 35) {
-                ageSelectedIndexes.add(i);
-            }
+            aggregate(batch, selection, perCity);
         }
-        ageSelectedIndexes.trim();
-        return ageSelectedIndexes;
-    }
-
-    // Keep street ending in 'way'
-    private IntArrayList filterOnStreet(VectorSchemaRoot schemaRoot) {
-        StructVector addressVector = (StructVector) schemaRoot.getVector("address");
-        VarCharVector streetVector = (VarCharVector) addressVector.getChild("street");
-
-        IntArrayList streetSelectedIndexes = new IntArrayList();
-        byte[] suffixBytes = "way".getBytes();
-        for (int i = 0; i < schemaRoot.getRowCount(); i++) {
-            if (ByteString.of(streetVector.get(i)).endsWith(suffixBytes)) {
-                streetSelectedIndexes.add(i);
-            }
-        }
-        streetSelectedIndexes.trim();
-        return streetSelectedIndexes;
     }
 
     /**
-     * Outputs intersection of two sorted integer arrays
+     * Given the selected rows, it adds their age to the aggregation of their city
      *
-     * @param x first array
-     * @param y second array
-     * @return Intersection of x and y
+     * @param batch     Loaded batch
+     * @param selection Rows to aggregate
+     * @param perCity   Aggregating age per city
      */
-    private IntArrayList intersection(IntList x, IntList y) {
-        int indexX = 0;
-        int indexY = 0;
-        IntArrayList intersection = new IntArrayList();
-
-        while (indexX < x.size() && indexY < y.size()) {
-            if (x.getInt(indexX) < y.getInt(indexY)) {
-                indexX++;
-            } else if (x.getInt(indexX) > y.getInt(indexY)) {
-                indexY++;
-            } else {
-                intersection.add(x.getInt(indexX));
-                indexX++;
-                indexY++;
-            }
-        }
-
-        intersection.trim();
-        return intersection;
+    private void aggregate(Batch batch, Selection selection, GroupBy perCity) {
+        perCity.add(batch.utf8("address.city"), selection, (UInt4Vector) batch.vector("age"));
     }
 }
@@ -0,0 +1,83 @@
+package io.storage.arrow.t;
+
+import io.storage.rocks.KVRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Small application to measure how point reads scale with the number of reading threads:
+ * - write a set of keys
+ * - read random keys from 1, 2, 4 ... up to the number of cores threads
+ * - log the read throughput per thread count
+ */
+@Slf4j
+public class ReadContentionApplication {
+
+    private static final int KEY_COUNT = 100_000;
+    private static final int VALUE_SIZE = 128;
+    private static final int READS_PER_THREAD = 200_000;
+    // keeps the benchmark keys away from the arrow segments
+    private static final int KEY_OFFSET = 1 << 30;
+
+    /**
+     * Main method: writing keys, reading them with a growing number of threads.
+     */
+    public void doBenchmark(KVRepository<byte[], byte[]> repository) throws Exception {
+        final byte[] value = new byte[VALUE_SIZE];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            repository.save(key(i), value);
+        }
+
+        final int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            final long reads = (long) threads * READS_PER_THREAD;
+            final long elapsed = readInParallel(repository, threads);
+            log.info("Threads = {}; Reads = {}; Throughput = {} reads/s",
+                    threads, reads, reads * 1_000_000_000L / elapsed);
+        }
+
+        final List<byte[]> keys = new ArrayList<>(KEY_COUNT);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys.add(key(i));
+        }
+        repository.deleteAll(keys);
+    }
+
+    /**
+     * Reads random keys from the given number of threads
+     *
+     * @return elapsed nanoseconds until all threads finished
+     */
+    private long readInParallel(KVRepository<byte[], byte[]> repository, int threads) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(threads);
+            final long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < READS_PER_THREAD; i++) {
+                        repository.find(key(random.nextInt(KEY_COUNT)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(4).putInt(KEY_OFFSET + i).array();
+    }
+}
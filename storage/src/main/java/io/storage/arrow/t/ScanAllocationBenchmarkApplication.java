@@ -0,0 +1,104 @@
+package io.storage.arrow.t;
+
+import io.storage.arrow.Allocators;
+import io.storage.arrow.Dataset;
+import io.storage.arrow.RocksDbArrowReader;
+import io.storage.arrow.Utf8Column;
+import io.storage.arrow.query.Batch;
+import io.storage.arrow.query.Condition;
+import io.storage.arrow.query.Selection;
+import io.storage.rocks.KVRepository;
+import lombok.extern.slf4j.Slf4j;
+import okio.ByteString;
+import org.apache.arrow.memory.BufferAllocator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small application to measure the heap allocated by the string conditions on the scan path:
+ * - scan every batch of a dataset
+ * - evaluate every condition on the batch, reusing one selection
+ * - log the bytes allocated by the evaluations per row, next to copying every street into a ByteString
+ * Only the evaluation is measured, loading the batches allocates on its own.
+ */
+@Slf4j
+public class ScanAllocationBenchmarkApplication {
+
+    private static final ByteString WAY = ByteString.encodeUtf8("way");
+
+    private static final Map<String, Condition> CONDITIONS = new LinkedHashMap<>();
+
+    static {
+        CONDITIONS.put("lastName = Smith", Condition.eq("lastName", "Smith"));
+        CONDITIONS.put("lastName starts with P", Condition.prefix("lastName", "P"));
+        CONDITIONS.put("street ends with way", Condition.suffix("address.street", "way"));
+        CONDITIONS.put("street contains all", Condition.contains("address.street", "all"));
+        CONDITIONS.put("city in (Paris, London, Brussels)",
+                Condition.in("address.city", "Paris", "London", "Brussels"));
+    }
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Main method: scanning the dataset and logging the allocations of every condition.
+     *
+     * @throws IOException If reading the batches fails
+     */
+    public void doBenchmark(KVRepository<byte[], byte[]> repository, Dataset dataset) throws IOException {
+        final Map<String, Long> allocated = new LinkedHashMap<>();
+        CONDITIONS.keySet().forEach(name -> allocated.put(name, 0L));
+        long copyAllocated = 0;
+        long rows = 0;
+
+        try (BufferAllocator allocator = Allocators.child(getClass().getSimpleName());
+             RocksDbArrowReader reader = new RocksDbArrowReader(repository, dataset, allocator)) {
+            final Batch batch = new Batch(reader.getVectorSchemaRoot(), reader);
+            final Selection selection = new Selection();
+            boolean warmedUp = false;
+            while (reader.loadNextBatch()) {
+                for (Map.Entry<String, Condition> condition : CONDITIONS.entrySet()) {
+                    final long before = threads.getCurrentThreadAllocatedBytes();
+                    condition.getValue().select(batch, selection);
+                    final long after = threads.getCurrentThreadAllocatedBytes();
+                    // The first batch sizes the selection words
+                    if (warmedUp) {
+                        allocated.merge(condition.getKey(), after - before, Long::sum);
+                    }
+                }
+
+                // What the filters did before: a copy of every value to test it
+                final Utf8Column street = batch.utf8("address.street");
+                int matches = 0;
+                final long before = threads.getCurrentThreadAllocatedBytes();
+                for (int row = 0; row < batch.rowCount(); row++) {
+                    if (!street.isNull(row) && street.value(row).endsWith(WAY)) {
+                        matches++;
+                    }
+                }
+                final long after = threads.getCurrentThreadAllocatedBytes();
+
+                if (warmedUp) {
+                    copyAllocated += after - before;
+                    rows += batch.rowCount();
+                }
+                warmedUp = true;
+                log.debug("Copied streets ending with way = {}", matches);
+            }
+        }
+
+        if (rows == 0) {
+            log.info("Not enough batches in {} to measure", dataset.name());
+            return;
+        }
+        for (Map.Entry<String, Long> condition : allocated.entrySet()) {
+            log.info("Condition = {}; Rows = {}; Allocated bytes = {}; Per row = {}",
+                    condition.getKey(), rows, condition.getValue(), (double) condition.getValue() / rows);
+        }
+        log.info("Copying ByteString: Rows = {}; Allocated bytes = {}; Per row = {}",
+                rows, copyAllocated, (double) copyAllocated / rows);
+    }
+}
@@ -0,0 +1,29 @@
+package io.storage.rocks;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Forward-only cursor over a key range, positioned before the first entry.
+ */
+public interface KVCursor<K, V> extends AutoCloseable {
+  /**
+   * Moves to the next entry.
+   *
+   * @return false once the range is exhausted
+   * @throws IllegalStateException if the entries can't be read, the rest of the range is unknown then
+   */
+  boolean next();
+  K key();
+  V value();
+
+  /**
+   * Copies the current value into {@code target} starting at its position, without an intermediate heap copy when
+   * the buffer is direct. The limit of {@code target} is set to the end of the copied bytes.
+   *
+   * @return full length of the value, larger than {@code target.remaining()} if it did not fit
+   */
+  int value(ByteBuffer target);
+
+  @Override
+  void close();
+}
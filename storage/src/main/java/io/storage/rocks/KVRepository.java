@@ -1,8 +1,41 @@
 package io.storage.rocks;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 public interface KVRepository<K, V> {
   boolean save(K key, V value);
   Optional<V> find(K key);
   boolean delete(K key);
+
+  /**
+   * Atomically stores all entries in one round-trip. Entries are applied in iteration order of the map.
+   */
+  boolean saveAll(Map<K, V> entries);
+
+  /**
+   * Looks up all keys in one round-trip; the result has the same size and order as {@code keys}.
+   */
+  List<Optional<V>> findAll(List<K> keys);
+
+  /**
+   * Atomically deletes all keys in one round-trip.
+   */
+  boolean deleteAll(List<K> keys);
+
+  /**
+   * Read-modify-write of a single key. Updates, saves and deletes of the same key are serialized, so concurrent
+   * callers never lose each other's writes; {@link #saveAll} and {@link #deleteAll} aren't ordered with them.
+   *
+   * @param remapping computes the new value from the current one
+   * @return the stored value, or empty if it could not be stored
+   * @throws IllegalStateException if the current value can't be read, the remapping isn't called then
+   */
+  Optional<V> update(K key, Function<Optional<V>, V> remapping);
+
+  /**
+   * Opens a cursor over the keys in {@code [from, to)} in key order. The cursor must be closed.
+   */
+  KVCursor<K, V> scan(K from, K to);
 }
@@ -0,0 +1,151 @@
+package io.storage.rocks;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Times every operation of a repository, {@code storage.repository.operation} tagged by operation with a percentile
+ * histogram, and counts the bytes read and written. A scan is timed until its cursor is closed.
+ */
+public class MeteredKVRepository implements KVRepository<byte[], byte[]> {
+
+    private final KVRepository<byte[], byte[]> delegate;
+    private final Timer saves;
+    private final Timer finds;
+    private final Timer deletes;
+    private final Timer saveAlls;
+    private final Timer findAlls;
+    private final Timer deleteAlls;
+    private final Timer updates;
+    private final Timer scans;
+    private final Counter bytesRead;
+    private final Counter bytesWritten;
+    private final Counter entriesScanned;
+
+    public MeteredKVRepository(final KVRepository<byte[], byte[]> delegate, final MeterRegistry registry) {
+        this.delegate = delegate;
+        this.saves = timer(registry, "save");
+        this.finds = timer(registry, "find");
+        this.deletes = timer(registry, "delete");
+        this.saveAlls = timer(registry, "saveAll");
+        this.findAlls = timer(registry, "findAll");
+        this.deleteAlls = timer(registry, "deleteAll");
+        this.updates = timer(registry, "update");
+        this.scans = timer(registry, "scan");
+        this.bytesRead = Counter.builder("storage.repository.bytes")
+                .tag("direction", "read")
+                .baseUnit("bytes")
+                .register(registry);
+        this.bytesWritten = Counter.builder("storage.repository.bytes")
+                .tag("direction", "written")
+                .baseUnit("bytes")
+                .register(registry);
+        this.entriesScanned = Counter.builder("storage.repository.scanned")
+                .description("Entries returned by scans")
+                .register(registry);
+    }
+
+    private static Timer timer(final MeterRegistry registry, final String operation) {
+        return Timer.builder("storage.repository.operation")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public boolean save(byte[] key, byte[] value) {
+        bytesWritten.increment(value.length);
+        return saves.record(() -> delegate.save(key, value));
+    }
+
+    @Override
+    public Optional<byte[]> find(byte[] key) {
+        final Optional<byte[]> value = finds.record(() -> delegate.find(key));
+        value.ifPresent(bytes -> bytesRead.increment(bytes.length));
+        return value;
+    }
+
+    @Override
+    public boolean delete(byte[] key) {
+        return deletes.record(() -> delegate.delete(key));
+    }
+
+    @Override
+    public boolean saveAll(Map<byte[], byte[]> entries) {
+        bytesWritten.increment(entries.values().stream().mapToLong(value -> value.length).sum());
+        return saveAlls.record(() -> delegate.saveAll(entries));
+    }
+
+    @Override
+    public List<Optional<byte[]>> findAll(List<byte[]> keys) {
+        final List<Optional<byte[]>> values = findAlls.record(() -> delegate.findAll(keys));
+        bytesRead.increment(values.stream().flatMap(Optional::stream).mapToLong(value -> value.length).sum());
+        return values;
+    }
+
+    @Override
+    public boolean deleteAll(List<byte[]> keys) {
+        return deleteAlls.record(() -> delegate.deleteAll(keys));
+    }
+
+    @Override
+    public Optional<byte[]> update(byte[] key, Function<Optional<byte[]>, byte[]> remapping) {
+        return updates.record(() -> delegate.update(key, remapping));
+    }
+
+    @Override
+    public KVCursor<byte[], byte[]> scan(byte[] from, byte[] to) {
+        return new MeteredCursor(delegate.scan(from, to), Timer.start());
+    }
+
+    private class MeteredCursor implements KVCursor<byte[], byte[]> {
+        private final KVCursor<byte[], byte[]> cursor;
+        private final Timer.Sample sample;
+
+        private MeteredCursor(KVCursor<byte[], byte[]> cursor, Timer.Sample sample) {
+            this.cursor = cursor;
+            this.sample = sample;
+        }
+
+        @Override
+        public boolean next() {
+            final boolean valid = cursor.next();
+            if (valid) {
+                entriesScanned.increment();
+            }
+            return valid;
+        }
+
+        @Override
+        public byte[] key() {
+            return cursor.key();
+        }
+
+        @Override
+        public byte[] value() {
+            final byte[] value = cursor.value();
+            bytesRead.increment(value.length);
+            return value;
+        }
+
+        @Override
+        public int value(ByteBuffer target) {
+            final int size = cursor.value(target);
+            bytesRead.increment(size);
+            return size;
+        }
+
+        @Override
+        public void close() {
+            cursor.close();
+            sample.stop(scans);
+        }
+    }
+}
@@ -1,35 +1,119 @@
 package io.storage.rocks;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
+import org.rocksdb.Filter;
+import org.rocksdb.HyperClockCache;
+import org.rocksdb.LRUCache;
 import org.rocksdb.Options;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.Statistics;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Optional;
 
 @Slf4j
+@Configuration
+@EnableConfigurationProperties(RocksDBProperties.class)
 public class RocksDBConfigurations {
 
-    private final static String FILE_NAME = "storage-db";
+    @Bean
+    public Statistics rocksDBStatistics() {
+        RocksDB.loadLibrary();
+        return new Statistics();
+    }
 
-    public RocksDB rocksDB() {
+    /**
+     * Closed by the context after the database, which depends on it.
+     */
+    @Bean
+    public RocksDBOptions rocksDBOptions(final RocksDBProperties properties, final Statistics statistics) {
         RocksDB.loadLibrary();
-        final Options options = new Options();
-        options.setCreateIfMissing(true);
-        File baseDir = new File("/tmp/rocks", FILE_NAME);
+        final RocksDBOptions options = options(properties);
+        options.getOptions().setStatistics(statistics);
+        return options;
+    }
+
+    @Bean
+    public RocksDB rocksDB(final RocksDBProperties properties, final RocksDBOptions options) {
+        RocksDB.loadLibrary();
+        File baseDir = new File(properties.getPath());
 
         try {
             Files.createDirectories(baseDir.getParentFile().toPath());
             Files.createDirectories(baseDir.getAbsoluteFile().toPath());
 
-            final RocksDB db = RocksDB.open(options, baseDir.getAbsolutePath());
-            log.info("RocksDB initialized");
+            final RocksDB db = RocksDB.open(options.getOptions(), baseDir.getAbsolutePath());
+            log.info("RocksDB initialized with profile {}", properties.getProfile());
             return db;
         } catch (IOException | RocksDBException e) {
             log.error("Error initializng RocksDB. Exception: '{}', message: '{}'", e.getCause(), e.getMessage(), e);
             throw new AssertionError(e);
         }
     }
+
+    @Bean
+    public KVRepository<byte[], byte[]> rocksDBRepository(final RocksDB rocksDB,
+                                                          final RocksDBProperties properties,
+                                                          final MeterRegistry registry) {
+        return new MeteredKVRepository(new RocksDBRepository(rocksDB, properties.getScanReadaheadSize()), registry);
+    }
+
+    @Bean
+    public RocksDBMetrics rocksDBMetrics(final RocksDB rocksDB, final Statistics statistics) {
+        return new RocksDBMetrics(rocksDB, statistics);
+    }
+
+    /**
+     * Builds engine options from the profile, overridden by every property which is set.
+     */
+    private RocksDBOptions options(final RocksDBProperties properties) {
+        final RocksDBProfile profile = properties.getProfile();
+        final long blockSize = Optional.ofNullable(properties.getBlockSize()).orElse(profile.getBlockSize());
+        final long blockCacheSize = Optional.ofNullable(properties.getBlockCacheSize())
+                .orElse(profile.getBlockCacheSize());
+        final double bloomBitsPerKey = Optional.ofNullable(properties.getBloomBitsPerKey())
+                .orElse(profile.getBloomBitsPerKey());
+        final int backgroundJobs = Optional.ofNullable(properties.getBackgroundJobs())
+                .orElse(Runtime.getRuntime().availableProcessors());
+
+        final Cache cache = switch (Optional.ofNullable(properties.getCacheType()).orElse(profile.getCacheType())) {
+            case LRU -> new LRUCache(blockCacheSize);
+            case HYPER_CLOCK -> new HyperClockCache(blockCacheSize, blockSize, -1, false);
+        };
+        final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig()
+                .setBlockCache(cache)
+                .setBlockSize(blockSize)
+                .setCacheIndexAndFilterBlocks(true)
+                .setPinL0FilterAndIndexBlocksInCache(true);
+        final Filter filter = bloomBitsPerKey > 0 ? new BloomFilter(bloomBitsPerKey) : null;
+        if (filter != null) {
+            tableConfig.setFilterPolicy(filter);
+        }
+
+        final Options options = new Options()
+                .setCreateIfMissing(true)
+                .setTableFormatConfig(tableConfig)
+                .setCompressionType(Optional.ofNullable(properties.getCompression())
+                        .orElse(profile.getCompression()))
+                .setCompactionStyle(Optional.ofNullable(properties.getCompactionStyle())
+                        .orElse(profile.getCompactionStyle()))
+                .setWriteBufferSize(Optional.ofNullable(properties.getWriteBufferSize())
+                        .orElse(profile.getWriteBufferSize()))
+                .setMaxWriteBufferNumber(Optional.ofNullable(properties.getMaxWriteBufferNumber())
+                        .orElse(profile.getMaxWriteBufferNumber()))
+                .setIncreaseParallelism(backgroundJobs)
+                .setMaxBackgroundJobs(backgroundJobs);
+        profile.tune(options);
+        return new RocksDBOptions(options, cache, filter);
+    }
 }
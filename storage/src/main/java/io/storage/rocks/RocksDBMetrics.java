@@ -0,0 +1,91 @@
+package io.storage.rocks;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.HistogramType;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.Statistics;
+import org.rocksdb.TickerType;
+
+import java.util.Map;
+
+/**
+ * Engine internals as meters: the tickers and latency histograms of the RocksDB {@link Statistics}, and properties of
+ * the database polled when the registry reads them.
+ */
+@Slf4j
+public class RocksDBMetrics implements MeterBinder {
+
+    private static final Map<String, String> PROPERTIES = Map.of(
+            "rocksdb.memtable.size", "rocksdb.cur-size-all-mem-tables",
+            "rocksdb.compaction.pending", "rocksdb.estimate-pending-compaction-bytes",
+            "rocksdb.block.cache.usage", "rocksdb.block-cache-usage",
+            "rocksdb.sst.size", "rocksdb.total-sst-files-size",
+            "rocksdb.keys.estimated", "rocksdb.estimate-num-keys",
+            "rocksdb.compactions.running", "rocksdb.num-running-compactions");
+
+    private static final Map<String, TickerType> TICKERS = Map.of(
+            "rocksdb.block.cache.hit", TickerType.BLOCK_CACHE_HIT,
+            "rocksdb.block.cache.miss", TickerType.BLOCK_CACHE_MISS,
+            "rocksdb.bloom.filter.useful", TickerType.BLOOM_FILTER_USEFUL,
+            "rocksdb.bytes.written", TickerType.BYTES_WRITTEN,
+            "rocksdb.bytes.read", TickerType.BYTES_READ,
+            "rocksdb.compaction.bytes.read", TickerType.COMPACT_READ_BYTES,
+            "rocksdb.compaction.bytes.written", TickerType.COMPACT_WRITE_BYTES,
+            "rocksdb.stall.micros", TickerType.STALL_MICROS);
+
+    private static final Map<String, HistogramType> HISTOGRAMS = Map.of(
+            "rocksdb.get.micros", HistogramType.DB_GET,
+            "rocksdb.write.micros", HistogramType.DB_WRITE,
+            "rocksdb.multiget.micros", HistogramType.DB_MULTIGET,
+            "rocksdb.seek.micros", HistogramType.DB_SEEK);
+
+    private final RocksDB db;
+    private final Statistics statistics;
+
+    public RocksDBMetrics(final RocksDB db, final Statistics statistics) {
+        this.db = db;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        PROPERTIES.forEach((name, property) -> Gauge.builder(name, db, rocksDB -> longProperty(rocksDB, property))
+                .register(registry));
+        TICKERS.forEach((name, ticker) -> FunctionCounter
+                .builder(name, statistics, stats -> stats.getTickerCount(ticker))
+                .register(registry));
+        Gauge.builder("rocksdb.block.cache.hit.ratio", statistics, RocksDBMetrics::blockCacheHitRatio)
+                .register(registry);
+        HISTOGRAMS.forEach((name, histogram) -> {
+            Gauge.builder(name, statistics, stats -> stats.getHistogramData(histogram).getMedian())
+                    .tag("quantile", "0.5")
+                    .register(registry);
+            Gauge.builder(name, statistics, stats -> stats.getHistogramData(histogram).getPercentile95())
+                    .tag("quantile", "0.95")
+                    .register(registry);
+            Gauge.builder(name, statistics, stats -> stats.getHistogramData(histogram).getPercentile99())
+                    .tag("quantile", "0.99")
+                    .register(registry);
+        });
+    }
+
+    private static double blockCacheHitRatio(final Statistics statistics) {
+        final long hits = statistics.getTickerCount(TickerType.BLOCK_CACHE_HIT);
+        final long lookups = hits + statistics.getTickerCount(TickerType.BLOCK_CACHE_MISS);
+        return lookups == 0 ? Double.NaN : (double) hits / lookups;
+    }
+
+    private static double longProperty(final RocksDB db, final String property) {
+        try {
+            return db.getLongProperty(property);
+        } catch (RocksDBException e) {
+            log.warn("Can't read property {}, cause: '{}', message: '{}'", property, e.getCause(), e.getMessage());
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.storage.rocks;
+
+import org.rocksdb.Cache;
+import org.rocksdb.Filter;
+import org.rocksdb.Options;
+
+/**
+ * Engine options with the native handles they reference, the block cache and the bloom filter. They must outlive the
+ * database and are released together by {@link #close()}, once it is closed.
+ */
+public class RocksDBOptions implements AutoCloseable {
+
+    private final Options options;
+    private final Cache cache;
+    // null without a bloom filter
+    private final Filter filter;
+
+    RocksDBOptions(final Options options, final Cache cache, final Filter filter) {
+        this.options = options;
+        this.cache = cache;
+        this.filter = filter;
+    }
+
+    public Options getOptions() {
+        return options;
+    }
+
+    @Override
+    public void close() {
+        options.close();
+        if (filter != null) {
+            filter.close();
+        }
+        cache.close();
+    }
+}
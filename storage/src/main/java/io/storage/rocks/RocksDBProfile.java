@@ -0,0 +1,63 @@
+package io.storage.rocks;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.CompressionType;
+import org.rocksdb.Options;
+
+/**
+ * Named engine tunings. Every value can still be overridden one by one with {@link RocksDBProperties}.
+ */
+@Getter
+@AllArgsConstructor
+public enum RocksDBProfile {
+
+    DEFAULT(RocksDBProperties.CacheType.LRU, 64L << 20, 4L << 10, 10,
+            CompressionType.LZ4_COMPRESSION, CompactionStyle.LEVEL, 64L << 20, 2),
+
+    /**
+     * Large memtables and relaxed L0 triggers, so ingestion is not throttled by compactions.
+     */
+    BULK_LOAD(RocksDBProperties.CacheType.LRU, 64L << 20, 16L << 10, 0,
+            CompressionType.LZ4_COMPRESSION, CompactionStyle.LEVEL, 256L << 20, 6) {
+        @Override
+        void tune(Options options) {
+            options.setLevel0FileNumCompactionTrigger(16)
+                    .setLevel0SlowdownWritesTrigger(64)
+                    .setLevel0StopWritesTrigger(128);
+        }
+    },
+
+    /**
+     * Small blocks, bloom filters and a big sharded cache for random gets.
+     */
+    POINT_LOOKUP(RocksDBProperties.CacheType.HYPER_CLOCK, 512L << 20, 4L << 10, 10,
+            CompressionType.LZ4_COMPRESSION, CompactionStyle.LEVEL, 64L << 20, 2),
+
+    /**
+     * Big, well compressed blocks for sequential reads; filters do not help range scans.
+     */
+    SCAN_HEAVY(RocksDBProperties.CacheType.LRU, 256L << 20, 64L << 10, 0,
+            CompressionType.ZSTD_COMPRESSION, CompactionStyle.LEVEL, 128L << 20, 3) {
+        @Override
+        void tune(Options options) {
+            options.setCompactionReadaheadSize(2L << 20);
+        }
+    };
+
+    private final RocksDBProperties.CacheType cacheType;
+    private final long blockCacheSize;
+    private final long blockSize;
+    private final double bloomBitsPerKey;
+    private final CompressionType compression;
+    private final CompactionStyle compactionStyle;
+    private final long writeBufferSize;
+    private final int maxWriteBufferNumber;
+
+    /**
+     * Applies the options which have no per-property override
+     */
+    void tune(Options options) {
+    }
+}
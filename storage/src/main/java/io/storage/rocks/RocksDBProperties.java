@@ -0,0 +1,42 @@
+package io.storage.rocks;
+
+import lombok.Data;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.CompressionType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * RocksDB engine settings. Unset values are taken from the selected {@link RocksDBProfile}.
+ */
+@Data
+@ConfigurationProperties(prefix = "storage.rocksdb")
+public class RocksDBProperties {
+
+    private String path = "/tmp/rocks/storage-db";
+    private RocksDBProfile profile = RocksDBProfile.DEFAULT;
+
+    private CacheType cacheType;
+    private Long blockCacheSize;
+    private Long blockSize;
+    /**
+     * Bits per key of the bloom filter, 0 disables filters.
+     */
+    private Double bloomBitsPerKey;
+    private CompressionType compression;
+    private CompactionStyle compactionStyle;
+    /**
+     * Flush and compaction threads, the number of cores by default.
+     */
+    private Integer backgroundJobs;
+    private Long writeBufferSize;
+    private Integer maxWriteBufferNumber;
+    /**
+     * Readahead of range scans; scans bypass the block cache so they do not evict hot point-lookup blocks.
+     */
+    private long scanReadaheadSize = 2L << 20;
+
+    public enum CacheType {
+        LRU,
+        HYPER_CLOCK
+    }
+}
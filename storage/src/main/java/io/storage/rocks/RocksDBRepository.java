@@ -1,30 +1,64 @@
 package io.storage.rocks;
 
 import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 @Slf4j
 public class RocksDBRepository implements KVRepository<byte[], byte[]> {
-    private final RocksDB db = new RocksDBConfigurations().rocksDB();
-    //todo use locs instead synchronized
+    // RocksDB handles are thread-safe, locks only order single-key writes with read-modify-write of the same key
+    private static final int LOCK_STRIPES = 64;
+
+    private final RocksDB db;
+    private final long scanReadaheadSize;
+    private final Lock[] locks = new Lock[LOCK_STRIPES];
+
+    public RocksDBRepository(final RocksDB db, final long scanReadaheadSize) {
+        this.db = db;
+        this.scanReadaheadSize = scanReadaheadSize;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private Lock lockFor(byte[] key) {
+        final int hash = Arrays.hashCode(key);
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
 
     @Override
-    public synchronized boolean save(byte[] key, byte[] value) {
-        log.debug("saving value '{}' with key '{}'", value, key);
+    public boolean save(byte[] key, byte[] value) {
+        log.debug("saving {} bytes with a key of {} bytes", value.length, key.length);
+        final Lock lock = lockFor(key);
+        lock.lock();
         try {
             db.put(key, value);
         } catch (RocksDBException e) {
             log.error("Error saving entry. Cause: '{}', message: '{}'", e.getCause(), e.getMessage());
             return false;
+        } finally {
+            lock.unlock();
         }
         return true;
     }
 
     @Override
-    public synchronized Optional<byte[]> find(byte[] key) {
+    public Optional<byte[]> find(byte[] key) {
         byte[] value = null;
         try {
             byte[] bytes = db.get(key);
@@ -33,25 +67,170 @@ public class RocksDBRepository implements KVRepository<byte[], byte[]> {
             }
         } catch (RocksDBException e) {
             log.error(
-                    "Error retrieving the entry with key: {}, cause: {}, message: {}",
-                    key,
+                    "Error retrieving the entry with a key of {} bytes, cause: {}, message: {}",
+                    key.length,
                     e.getCause(),
                     e.getMessage()
             );
         }
-        log.debug("finding key '{}' returns '{}'", key, value);
+        log.debug("finding a key of {} bytes returns {} bytes", key.length, value != null ? value.length : null);
         return value != null ? Optional.of(value) : Optional.empty();
     }
 
     @Override
-    public synchronized boolean delete(byte[] key) {
-        log.debug("deleting key '{}'", key);
+    public boolean delete(byte[] key) {
+        log.debug("deleting a key of {} bytes", key.length);
+        final Lock lock = lockFor(key);
+        lock.lock();
         try {
             db.delete(key);
         } catch (RocksDBException e) {
             log.error("Error deleting entry, cause: '{}', message: '{}'", e.getCause(), e.getMessage());
             return false;
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean saveAll(Map<byte[], byte[]> entries) {
+        log.debug("saving {} entries", entries.size());
+        try (final WriteBatch batch = new WriteBatch();
+             final WriteOptions writeOptions = new WriteOptions()) {
+            for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+                batch.put(entry.getKey(), entry.getValue());
+            }
+            db.write(writeOptions, batch);
+        } catch (RocksDBException e) {
+            log.error("Error saving entries. Cause: '{}', message: '{}'", e.getCause(), e.getMessage());
+            return false;
         }
         return true;
     }
+
+    @Override
+    public List<Optional<byte[]>> findAll(List<byte[]> keys) {
+        final List<Optional<byte[]>> values = new ArrayList<>(keys.size());
+        try {
+            for (byte[] bytes : db.multiGetAsList(keys)) {
+                values.add(Optional.ofNullable(bytes));
+            }
+        } catch (RocksDBException e) {
+            log.error(
+                    "Error retrieving {} entries, cause: {}, message: {}",
+                    keys.size(),
+                    e.getCause(),
+                    e.getMessage()
+            );
+            values.clear();
+            for (int i = 0; i < keys.size(); i++) {
+                values.add(Optional.empty());
+            }
+        }
+        log.debug("finding {} keys returns {} values", keys.size(), values.stream().filter(Optional::isPresent).count());
+        return values;
+    }
+
+    @Override
+    public boolean deleteAll(List<byte[]> keys) {
+        log.debug("deleting {} keys", keys.size());
+        try (final WriteBatch batch = new WriteBatch();
+             final WriteOptions writeOptions = new WriteOptions()) {
+            for (byte[] key : keys) {
+                batch.delete(key);
+            }
+            db.write(writeOptions, batch);
+        } catch (RocksDBException e) {
+            log.error("Error deleting entries, cause: '{}', message: '{}'", e.getCause(), e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Optional<byte[]> update(byte[] key, Function<Optional<byte[]>, byte[]> remapping) {
+        final Lock lock = lockFor(key);
+        lock.lock();
+        try {
+            // a failed read must not look like an absent key, the remapping would reset the value
+            final byte[] current;
+            try {
+                current = db.get(key);
+            } catch (RocksDBException e) {
+                throw new IllegalStateException("Can't read the entry to update, cause: " + e.getCause(), e);
+            }
+            final byte[] value = remapping.apply(Optional.ofNullable(current));
+            return save(key, value) ? Optional.of(value) : Optional.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public KVCursor<byte[], byte[]> scan(byte[] from, byte[] to) {
+        log.debug("scanning from a key of {} bytes to a key of {} bytes", from.length, to.length);
+        final Slice upperBound = new Slice(to);
+        // sequential scans read ahead and leave the block cache to point lookups
+        final ReadOptions readOptions = new ReadOptions()
+                .setIterateUpperBound(upperBound)
+                .setReadaheadSize(scanReadaheadSize)
+                .setFillCache(false);
+        final RocksIterator iterator = db.newIterator(readOptions);
+        iterator.seek(from);
+        return new RocksDBCursor(iterator, readOptions, upperBound);
+    }
+
+    private static class RocksDBCursor implements KVCursor<byte[], byte[]> {
+        private final RocksIterator iterator;
+        private final ReadOptions readOptions;
+        private final Slice upperBound;
+        private boolean started = false;
+
+        private RocksDBCursor(RocksIterator iterator, ReadOptions readOptions, Slice upperBound) {
+            this.iterator = iterator;
+            this.readOptions = readOptions;
+            this.upperBound = upperBound;
+        }
+
+        @Override
+        public boolean next() {
+            if (started) {
+                iterator.next();
+            }
+            started = true;
+            if (iterator.isValid()) {
+                return true;
+            }
+            try {
+                iterator.status();
+            } catch (RocksDBException e) {
+                // the scan is incomplete, the caller must not take it for the end of the range
+                throw new IllegalStateException("Can't scan the entries, cause: " + e.getCause(), e);
+            }
+            return false;
+        }
+
+        @Override
+        public byte[] key() {
+            return iterator.key();
+        }
+
+        @Override
+        public byte[] value() {
+            return iterator.value();
+        }
+
+        @Override
+        public int value(ByteBuffer target) {
+            return iterator.value(target);
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+            readOptions.close();
+            upperBound.close();
+        }
+    }
 }
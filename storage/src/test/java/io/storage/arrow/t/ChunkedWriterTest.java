@@ -0,0 +1,86 @@
+package io.storage.arrow.t;
+
+import io.storage.arrow.Allocators;
+import io.storage.arrow.Dataset;
+import io.storage.arrow.DatasetCatalog;
+import io.storage.arrow.RocksDbArrowReader;
+import io.storage.rocks.RocksDBRepository;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ChunkedWriterTest {
+
+    private static final Schema SCHEMA = new Schema(List.of(
+            new Field("value", FieldType.nullable(new ArrowType.Utf8()), null)));
+
+    @TempDir
+    Path directory;
+
+    private Options options;
+    private RocksDB db;
+    private RocksDBRepository repository;
+
+    @BeforeEach
+    void open() throws Exception {
+        RocksDB.loadLibrary();
+        options = new Options().setCreateIfMissing(true);
+        db = RocksDB.open(options, directory.toString());
+        repository = new RocksDBRepository(db, 0);
+    }
+
+    @AfterEach
+    void close() {
+        db.close();
+        options.close();
+    }
+
+    @Test
+    void columnOverflowingItsDictionaryIsRewrittenPlain() throws Exception {
+        // every tenth value, the ones sampled, repeats among 100 values, the others are all distinct
+        final String[] values = new String[200_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 10 == 0 ? "common-" + (i / 10 % 100) : "unique-" + i;
+        }
+        final Dataset dataset = new DatasetCatalog(repository)
+                .getOrCreate("overflow", CompressionUtil.CodecType.LZ4_FRAME);
+
+        new ChunkedWriter<String>(repository, dataset, (value, index, batch) ->
+                ((VarCharVector) batch.getVector(0)).setSafe(index, value.getBytes(StandardCharsets.UTF_8)))
+                .write(values, SCHEMA);
+
+        final List<String> read = new ArrayList<>();
+        try (BufferAllocator allocator = Allocators.child("chunked-writer-test");
+             RocksDbArrowReader reader = new RocksDbArrowReader(repository, dataset, allocator)) {
+            final VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertNull(root.getVector(0).getField().getDictionary());
+            while (reader.loadNextBatch()) {
+                final VarCharVector vector = (VarCharVector) root.getVector(0);
+                for (int row = 0; row < root.getRowCount(); row++) {
+                    read.add(new String(vector.get(row), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        assertEquals(Arrays.asList(values), read);
+    }
+}
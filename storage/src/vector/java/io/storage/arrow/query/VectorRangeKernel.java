@@ -0,0 +1,81 @@
+package io.storage.arrow.query;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.util.MemoryUtil;
+import org.apache.arrow.vector.BaseFixedWidthVector;
+
+/**
+ * Compares the values in SIMD lanes with the incubating Vector API, 64 rows of the selection at a time: the lane
+ * masks of a word are packed into 64 bits and ANDed with the validity bits and the selection word. The data buffer
+ * of the batch is first copied into a reusable int array, loading lanes from an array works on every JDK since 17.
+ * <p>
+ * Only loaded when the {@code jdk.incubator.vector} module is enabled, see {@link IntegerCondition}.
+ */
+final class VectorRangeKernel implements RangeKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final long INT_ARRAY_OFFSET = MemoryUtil.UNSAFE.arrayBaseOffset(int[].class);
+
+    private final ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[0]);
+
+    @Override
+    public void retain(BaseFixedWidthVector vector, boolean unsigned, int low, int high, Selection selection) {
+        final int rowCount = selection.rowCount();
+        int[] values = scratch.get();
+        if (values.length < rowCount) {
+            values = new int[rowCount];
+            scratch.set(values);
+        }
+        MemoryUtil.UNSAFE.copyMemory(null, vector.getDataBuffer().memoryAddress(),
+                values, INT_ARRAY_OFFSET, (long) rowCount * Integer.BYTES);
+
+        final VectorOperators.Comparison ge = unsigned ? VectorOperators.UNSIGNED_GE : VectorOperators.GE;
+        final VectorOperators.Comparison le = unsigned ? VectorOperators.UNSIGNED_LE : VectorOperators.LE;
+        final IntVector lows = IntVector.broadcast(SPECIES, low);
+        final IntVector highs = IntVector.broadcast(SPECIES, high);
+        final int lanes = SPECIES.length();
+        final ArrowBuf validity = vector.getNullCount() == 0 ? null : vector.getValidityBuffer();
+
+        final long[] words = selection.words();
+        for (int word = 0; word < (rowCount + 63) >>> 6; word++) {
+            if (words[word] == 0) {
+                continue;
+            }
+            final int base = word << 6;
+            final int end = Math.min(base + 64, rowCount);
+            long matches = 0;
+            int row = base;
+            for (; row + lanes <= end; row += lanes) {
+                final IntVector lane = IntVector.fromArray(SPECIES, values, row);
+                matches |= lane.compare(ge, lows).and(lane.compare(le, highs)).toLong() << (row - base);
+            }
+            for (; row < end; row++) {
+                if (RangeKernel.inRange(values[row], unsigned, low, high)) {
+                    matches |= 1L << (row - base);
+                }
+            }
+            if (validity != null) {
+                matches &= validityWord(validity, word, end - base);
+            }
+            words[word] &= matches;
+        }
+    }
+
+    /**
+     * @return validity bits of the 64 rows of the word, Arrow stores them least significant bit first
+     */
+    private static long validityWord(ArrowBuf validity, int word, int rows) {
+        final long offset = (long) word * Long.BYTES;
+        if (offset + Long.BYTES <= validity.capacity()) {
+            return validity.getLong(offset);
+        }
+        long bits = 0;
+        for (int i = 0; i < (rows + 7) >>> 3; i++) {
+            bits |= (validity.getByte(offset + i) & 0xFFL) << (i * 8);
+        }
+        return bits;
+    }
+}